@@ -1,11 +1,20 @@
 package com.advent2024;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.PriorityQueue;
 
 /**
  * --- Day 1: Historian Hysteria --- The Chief Historian is always present for the big Christmas sleigh launch, but
@@ -88,6 +97,14 @@ public class Day1 {
 
   public static void main(String[] args) {
     String filePath = "src/main/resources/input_day1.txt";
+    if (args.length > 0 && args[0].equals("--external")) {
+      ExternalHistorianDistanceCalculator externalCalculator = new ExternalHistorianDistanceCalculator();
+      externalCalculator.readInput(filePath);
+      externalCalculator.calculate();
+      System.out.println("Total distance between the lists: " + externalCalculator.getTotalDistance());
+      System.out.println("Similarity score between the lists: " + externalCalculator.getSimilarityScore());
+      return;
+    }
     HistorianDistanceCalculator historianDistanceCalculator = new HistorianDistanceCalculator();
     historianDistanceCalculator.readInput(filePath);
     long totalDistance = historianDistanceCalculator.calculateTotalDistance();
@@ -98,8 +115,9 @@ public class Day1 {
 
   private static class HistorianDistanceCalculator {
 
-    private List<Integer> leftList = new ArrayList<>();
-    private List<Integer> rightList = new ArrayList<>();
+    private final IntColumn leftList = new IntColumn();
+    private final IntColumn rightList = new IntColumn();
+    private boolean sorted;
 
     public void readInput(String filePath) {
       try {
@@ -117,6 +135,7 @@ public class Day1 {
       if (numbers.length == 2) {
         leftList.add(Integer.parseInt(numbers[0]));
         rightList.add(Integer.parseInt(numbers[1]));
+        sorted = false;
       }
     }
 
@@ -125,21 +144,641 @@ public class Day1 {
         System.out.println("Left and right lists are not of the same size");
         return Long.MIN_VALUE;
       }
-      Collections.sort(leftList);
-      Collections.sort(rightList);
-
-      return IntStream.range(0, leftList.size())
-          .mapToLong(i -> Math.abs(leftList.get(i) - rightList.get(i))).sum();
+      leftList.sort();
+      rightList.sort();
+      sorted = true;
 
+      int[] left = leftList.values();
+      int[] right = rightList.values();
+      long totalDistance = 0;
+      for (int i = 0; i < leftList.size(); i++) {
+        totalDistance += Math.abs((long) left[i] - right[i]);
+      }
+      return totalDistance;
     }
 
     public long calculateSimilarityScore() {
+      if (sorted) {
+        return calculateSortedSimilarityScore();
+      }
+      SimilarityIndex rightIndex = SimilarityIndex.build(rightList.values(), rightList.size());
+      int[] left = leftList.values();
+      long similarityScore = 0;
+      for (int i = 0; i < leftList.size(); i++) {
+        similarityScore += (long) left[i] * rightIndex.count(left[i]);
+      }
+      return similarityScore;
+    }
+
+    // merge join over both lists once calculateTotalDistance has sorted them
+    private long calculateSortedSimilarityScore() {
+      int[] left = leftList.values();
+      int[] right = rightList.values();
+      int leftSize = leftList.size();
+      int rightSize = rightList.size();
       long similarityScore = 0;
-      for (Integer leftNumber : leftList) {
-        int rightCount = Collections.frequency(rightList, leftNumber);
-        similarityScore += (long) leftNumber * rightCount;
+      int i = 0;
+      int j = 0;
+      while (i < leftSize && j < rightSize) {
+        int leftNumber = left[i];
+        int rightNumber = right[j];
+        if (leftNumber < rightNumber) {
+          i++;
+        } else if (leftNumber > rightNumber) {
+          j++;
+        } else {
+          int leftCount = 0;
+          while (i < leftSize && left[i] == leftNumber) {
+            leftCount++;
+            i++;
+          }
+          int rightCount = 0;
+          while (j < rightSize && right[j] == rightNumber) {
+            rightCount++;
+            j++;
+          }
+          similarityScore += (long) leftNumber * leftCount * rightCount;
+        }
+      }
+      return similarityScore;
+    }
+  }
+
+  /**
+   * Incremental index for a stream of location ID pairs. The similarity score is kept from per-ID counts of both
+   * lists. The total distance uses the fact that pairing two equally sized sorted lists by rank costs the sum over all
+   * IDs x of |D(x)|, where D(x) is the number of left IDs minus the number of right IDs that are at most x. D only
+   * changes at IDs that occur, so the IDs are compressed to their sorted distinct values and each leaf of a segment
+   * tree stands for the gap up to the next one, weighted by its length. A pair adds or subtracts one from D over the
+   * leaves between its two IDs; the tree keeps weighted |D| sums along with min and max, and the update descends only
+   * into nodes where D changes sign or touches zero. That is O(log n) per such crossing, but when D keeps returning to
+   * zero across the range, as with interleaved lists, one pair can cost O(n) in the number of distinct IDs. Memory is
+   * O(n) as well. A pair with an ID the index has not seen rebuilds the tree from the counts, also in O(n).
+   */
+  public static class IncrementalHistorianIndex {
+
+    private int[] locationIds;
+    private int[] leftCounts;
+    private int[] rightCounts;
+    private int size;
+    private int[] min;
+    private int[] max;
+    private int[] lazy;
+    private long[] width;
+    private long[] absSum;
+    private long similarityScore;
+
+    /**
+     * Creates an empty index that already knows {@code locationIds}, so pairs among them never trigger a rebuild.
+     */
+    public IncrementalHistorianIndex(int[] locationIds) {
+      int[] sortedIds = Arrays.stream(locationIds).sorted().distinct().toArray();
+      rebuild(sortedIds, new int[sortedIds.length], new int[sortedIds.length]);
+    }
+
+    /**
+     * Builds an index over the IDs in the file and adds its pairs one at a time.
+     */
+    public static IncrementalHistorianIndex fromFile(String filePath) throws IOException {
+      IntColumn pairs = new IntColumn();
+      for (String line : Files.readAllLines(Paths.get(filePath))) {
+        String[] numbers = line.split("\\s{3}");
+        if (numbers.length == 2) {
+          pairs.add(Integer.parseInt(numbers[0]));
+          pairs.add(Integer.parseInt(numbers[1]));
+        }
+      }
+      int[] ids = Arrays.copyOf(pairs.values(), pairs.size());
+      IncrementalHistorianIndex index = new IncrementalHistorianIndex(ids);
+      for (int i = 0; i + 1 < ids.length; i += 2) {
+        index.addPair(ids[i], ids[i + 1]);
+      }
+      return index;
+    }
+
+    public void addPair(int left, int right) {
+      if (Arrays.binarySearch(locationIds, left) < 0 || Arrays.binarySearch(locationIds, right) < 0) {
+        addLocationIds(left, right);
+      }
+      int l = Arrays.binarySearch(locationIds, left);
+      int r = Arrays.binarySearch(locationIds, right);
+      similarityScore += (long) left * rightCounts[l];
+      leftCounts[l]++;
+      similarityScore += (long) right * leftCounts[r];
+      rightCounts[r]++;
+      shiftBalance(l, r, 1);
+    }
+
+    public void removePair(int left, int right) {
+      int l = Arrays.binarySearch(locationIds, left);
+      int r = Arrays.binarySearch(locationIds, right);
+      if (l < 0 || r < 0 || leftCounts[l] == 0 || rightCounts[r] == 0) {
+        throw new IllegalArgumentException("Pair " + left + ", " + right + " is not in the index");
+      }
+      rightCounts[r]--;
+      similarityScore -= (long) right * leftCounts[r];
+      leftCounts[l]--;
+      similarityScore -= (long) left * rightCounts[l];
+      shiftBalance(l, r, -1);
+    }
+
+    public long getTotalDistance() {
+      return absSum[1];
+    }
+
+    public long getSimilarityScore() {
+      return similarityScore;
+    }
+
+    private void addLocationIds(int left, int right) {
+      int[] sortedIds = Arrays.copyOf(locationIds, locationIds.length + 2);
+      sortedIds[locationIds.length] = left;
+      sortedIds[locationIds.length + 1] = right;
+      sortedIds = Arrays.stream(sortedIds).sorted().distinct().toArray();
+      int[] newLeftCounts = new int[sortedIds.length];
+      int[] newRightCounts = new int[sortedIds.length];
+      for (int i = 0; i < locationIds.length; i++) {
+        int j = Arrays.binarySearch(sortedIds, locationIds[i]);
+        newLeftCounts[j] = leftCounts[i];
+        newRightCounts[j] = rightCounts[i];
+      }
+      rebuild(sortedIds, newLeftCounts, newRightCounts);
+    }
+
+    private void rebuild(int[] sortedIds, int[] newLeftCounts, int[] newRightCounts) {
+      locationIds = sortedIds;
+      leftCounts = newLeftCounts;
+      rightCounts = newRightCounts;
+      size = sortedIds.length;
+      int nodes = 4 * Math.max(size, 1);
+      min = new int[nodes];
+      max = new int[nodes];
+      lazy = new int[nodes];
+      width = new long[nodes];
+      absSum = new long[nodes];
+      if (size == 0) {
+        return;
+      }
+      int[] balance = new int[size];
+      int running = 0;
+      for (int i = 0; i < size; i++) {
+        running += leftCounts[i] - rightCounts[i];
+        balance[i] = running;
+      }
+      build(1, 0, size - 1, balance);
+    }
+
+    private void build(int node, int lo, int hi, int[] balance) {
+      if (lo == hi) {
+        // D is zero past the largest ID, since both lists hold the same number of IDs
+        width[node] = lo + 1 < size ? (long) locationIds[lo + 1] - locationIds[lo] : 1;
+        min[node] = balance[lo];
+        max[node] = balance[lo];
+        absSum[node] = Math.abs(balance[lo]) * width[node];
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      build(2 * node, lo, mid, balance);
+      build(2 * node + 1, mid + 1, hi, balance);
+      width[node] = width[2 * node] + width[2 * node + 1];
+      min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+      max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+      absSum[node] = absSum[2 * node] + absSum[2 * node + 1];
+    }
+
+    private void shiftBalance(int left, int right, int delta) {
+      if (left < right) {
+        update(1, 0, size - 1, left, right - 1, delta);
+      } else if (right < left) {
+        update(1, 0, size - 1, right, left - 1, -delta);
       }
+    }
+
+    private void update(int node, int lo, int hi, int from, int to, int delta) {
+      if (to < lo || hi < from) {
+        return;
+      }
+      if (from <= lo && hi <= to) {
+        if (min[node] >= 0 && min[node] + delta >= 0) {
+          apply(node, delta, delta);
+          return;
+        }
+        if (max[node] <= 0 && max[node] + delta <= 0) {
+          apply(node, delta, -delta);
+          return;
+        }
+        if (lo == hi) {
+          min[node] += delta;
+          max[node] = min[node];
+          absSum[node] = Math.abs(min[node]) * width[node];
+          return;
+        }
+      }
+      int mid = (lo + hi) >>> 1;
+      pushDown(node);
+      update(2 * node, lo, mid, from, to, delta);
+      update(2 * node + 1, mid + 1, hi, from, to, delta);
+      min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+      max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+      absSum[node] = absSum[2 * node] + absSum[2 * node + 1];
+    }
+
+    private void apply(int node, int delta, int absDelta) {
+      min[node] += delta;
+      max[node] += delta;
+      lazy[node] += delta;
+      absSum[node] += absDelta * width[node];
+    }
+
+    private void pushDown(int node) {
+      int delta = lazy[node];
+      if (delta == 0) {
+        return;
+      }
+      applyUniform(2 * node, delta);
+      applyUniform(2 * node + 1, delta);
+      lazy[node] = 0;
+    }
+
+    // pending deltas are only recorded where every value kept its sign, so |D| moved by the same amount everywhere
+    private void applyUniform(int child, int delta) {
+      apply(child, delta, Math.abs(min[child] + delta) - Math.abs(min[child]));
+    }
+  }
+
+  /**
+   * Out-of-core variant of {@link HistorianDistanceCalculator} for lists that do not fit on the heap. The input is
+   * streamed into fixed-size buffers that are sorted and spilled to temporary run files, one set per list. The runs of
+   * each list are then k-way merged back in ascending order, so both the total distance and the similarity score are
+   * computed with a bounded amount of memory regardless of the input size.
+   */
+  private static class ExternalHistorianDistanceCalculator {
+
+    private static final int DEFAULT_RUN_LENGTH = 1 << 20;
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    private final int runLength;
+    private final List<Path> leftRuns = new ArrayList<>();
+    private final List<Path> rightRuns = new ArrayList<>();
+    private long totalDistance;
+    private long similarityScore;
+
+    public ExternalHistorianDistanceCalculator() {
+      this(DEFAULT_RUN_LENGTH);
+    }
+
+    public ExternalHistorianDistanceCalculator(int runLength) {
+      this.runLength = runLength;
+    }
+
+    public void readInput(String filePath) {
+      int[] left = new int[runLength];
+      int[] right = new int[runLength];
+      int size = 0;
+      try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] numbers = line.split("\\s{3}");
+          if (numbers.length != 2) {
+            continue;
+          }
+          left[size] = Integer.parseInt(numbers[0]);
+          right[size] = Integer.parseInt(numbers[1]);
+          if (++size == runLength) {
+            spill(left, right, size);
+            size = 0;
+          }
+        }
+        if (size > 0) {
+          spill(left, right, size);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+
+    private void spill(int[] left, int[] right, int size) throws IOException {
+      Arrays.sort(left, 0, size);
+      Arrays.sort(right, 0, size);
+      leftRuns.add(writeRun(left, size));
+      rightRuns.add(writeRun(right, size));
+    }
+
+    private static Path writeRun(int[] values, int size) throws IOException {
+      Path run = Files.createTempFile("day1-run", ".bin");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+        for (int i = 0; i < size; i++) {
+          out.writeInt(values[i]);
+        }
+      } catch (IOException e) {
+        Files.deleteIfExists(run);
+        throw e;
+      }
+      return run;
+    }
+
+    /**
+     * Computes both totals from the spilled runs and deletes them. Calling it again without new input keeps the
+     * totals.
+     */
+    public void calculate() {
+      if (leftRuns.isEmpty() && rightRuns.isEmpty()) {
+        return;
+      }
+      try {
+        reduceRuns(leftRuns);
+        reduceRuns(rightRuns);
+        calculateTotalDistance();
+        calculateSimilarityScore();
+      } catch (IOException e) {
+        e.printStackTrace();
+      } finally {
+        deleteRuns(leftRuns);
+        deleteRuns(rightRuns);
+      }
+    }
+
+    public long getTotalDistance() {
+      return totalDistance;
+    }
+
+    public long getSimilarityScore() {
       return similarityScore;
     }
+
+    // merges runs in groups until a single merge needs at most MAX_MERGE_WIDTH open readers
+    private static void reduceRuns(List<Path> runs) throws IOException {
+      while (runs.size() > MAX_MERGE_WIDTH) {
+        List<Path> group = new ArrayList<>(runs.subList(0, MAX_MERGE_WIDTH));
+        // tracked in runs before it is written, so a failed merge leaves every file where the caller deletes it
+        Path merged = Files.createTempFile("day1-run", ".bin");
+        runs.add(merged);
+        try (MergedRuns cursor = new MergedRuns(group);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged)))) {
+          while (cursor.hasNext()) {
+            out.writeInt(cursor.next());
+          }
+        }
+        runs.subList(0, MAX_MERGE_WIDTH).clear();
+        deleteRuns(group);
+      }
+    }
+
+    private void calculateTotalDistance() throws IOException {
+      totalDistance = 0;
+      try (MergedRuns left = new MergedRuns(leftRuns); MergedRuns right = new MergedRuns(rightRuns)) {
+        while (left.hasNext() && right.hasNext()) {
+          totalDistance += Math.abs((long) left.next() - right.next());
+        }
+      }
+    }
+
+    private void calculateSimilarityScore() throws IOException {
+      similarityScore = 0;
+      try (MergedRuns left = new MergedRuns(leftRuns); MergedRuns right = new MergedRuns(rightRuns)) {
+        while (left.hasNext() && right.hasNext()) {
+          int leftNumber = left.peek();
+          int rightNumber = right.peek();
+          if (leftNumber < rightNumber) {
+            left.next();
+          } else if (leftNumber > rightNumber) {
+            right.next();
+          } else {
+            long leftCount = 0;
+            while (left.hasNext() && left.peek() == leftNumber) {
+              left.next();
+              leftCount++;
+            }
+            long rightCount = 0;
+            while (right.hasNext() && right.peek() == rightNumber) {
+              right.next();
+              rightCount++;
+            }
+            similarityScore += leftNumber * leftCount * rightCount;
+          }
+        }
+      }
+    }
+
+    private static void deleteRuns(List<Path> runs) {
+      for (Path run : runs) {
+        try {
+          Files.deleteIfExists(run);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      runs.clear();
+    }
+  }
+
+  /**
+   * Ascending k-way merge over sorted run files written by {@link ExternalHistorianDistanceCalculator}.
+   */
+  private static class MergedRuns implements Closeable {
+
+    private final PriorityQueue<RunReader> readers = new PriorityQueue<>(Comparator.comparingInt(RunReader::current));
+
+    MergedRuns(List<Path> runs) throws IOException {
+      for (Path run : runs) {
+        RunReader reader = new RunReader(run);
+        if (reader.advance()) {
+          readers.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+    }
+
+    boolean hasNext() {
+      return !readers.isEmpty();
+    }
+
+    int peek() {
+      return readers.element().current();
+    }
+
+    int next() throws IOException {
+      RunReader reader = readers.poll();
+      int value = reader.current();
+      if (reader.advance()) {
+        readers.add(reader);
+      } else {
+        reader.close();
+      }
+      return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+      readers.clear();
+    }
+  }
+
+  private static class RunReader implements Closeable {
+
+    private final DataInputStream in;
+    private long remaining;
+    private int current;
+
+    RunReader(Path run) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+      this.remaining = Files.size(run) / Integer.BYTES;
+    }
+
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      current = in.readInt();
+      remaining--;
+      return true;
+    }
+
+    int current() {
+      return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Growable primitive column of location IDs. Sorting uses an LSD radix sort on bytes, which only applies to
+   * non-negative IDs; a column holding negative values falls back to {@link Arrays#sort(int[], int, int)}.
+   */
+  private static class IntColumn {
+
+    private int[] values = new int[1024];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      values[size++] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] values() {
+      return values;
+    }
+
+    void sort() {
+      int max = 0;
+      for (int i = 0; i < size; i++) {
+        if (values[i] < 0) {
+          Arrays.sort(values, 0, size);
+          return;
+        }
+        max = Math.max(max, values[i]);
+      }
+
+      int[] source = values;
+      int[] target = new int[values.length];
+      int[] counts = new int[256];
+      for (int shift = 0; shift < 32 && (max >>> shift) != 0; shift += 8) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) {
+          counts[(source[i] >>> shift) & 0xFF]++;
+        }
+        for (int b = 0, offset = 0; b < counts.length; b++) {
+          int count = counts[b];
+          counts[b] = offset;
+          offset += count;
+        }
+        for (int i = 0; i < size; i++) {
+          target[counts[(source[i] >>> shift) & 0xFF]++] = source[i];
+        }
+        int[] swap = source;
+        source = target;
+        target = swap;
+      }
+      values = source;
+    }
+  }
+
+  /**
+   * Occurrence counts of the right list, kept as a dense histogram when the value range is small enough and as an
+   * open-addressing int to int table otherwise.
+   */
+  private static class SimilarityIndex {
+
+    private static final int MAX_DENSE_RANGE = 1 << 22;
+
+    private final int min;
+    private final int[] histogram;
+    private final int[] keys;
+    private final int[] counts;
+    private final int mask;
+
+    private SimilarityIndex(int min, int[] histogram, int[] keys, int[] counts) {
+      this.min = min;
+      this.histogram = histogram;
+      this.keys = keys;
+      this.counts = counts;
+      this.mask = keys == null ? 0 : keys.length - 1;
+    }
+
+    static SimilarityIndex build(int[] values, int size) {
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, values[i]);
+        max = Math.max(max, values[i]);
+      }
+      long range = (long) max - min + 1;
+      if (size == 0 || range <= Math.max(MAX_DENSE_RANGE, size)) {
+        int[] histogram = new int[size == 0 ? 0 : (int) range];
+        for (int i = 0; i < size; i++) {
+          histogram[values[i] - min]++;
+        }
+        return new SimilarityIndex(min, histogram, null, null);
+      }
+
+      int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+      SimilarityIndex index = new SimilarityIndex(min, null, new int[capacity], new int[capacity]);
+      for (int i = 0; i < size; i++) {
+        index.increment(values[i]);
+      }
+      return index;
+    }
+
+    int count(int value) {
+      if (histogram != null) {
+        long offset = (long) value - min;
+        return offset >= 0 && offset < histogram.length ? histogram[(int) offset] : 0;
+      }
+      int slot = mix(value) & mask;
+      while (counts[slot] != 0) {
+        if (keys[slot] == value) {
+          return counts[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return 0;
+    }
+
+    private void increment(int value) {
+      int slot = mix(value) & mask;
+      while (counts[slot] != 0 && keys[slot] != value) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = value;
+      counts[slot]++;
+    }
+
+    private static int mix(int value) {
+      int h = value * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
   }
 }
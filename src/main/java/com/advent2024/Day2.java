@@ -1,12 +1,18 @@
 package com.advent2024;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * --- Day 2: Red-Nosed Reports --- Fortunately, the first location The Historians want to search isn't a long walk from
@@ -63,11 +69,28 @@ public class Day2 {
   public static void main(String[] args) {
     String filePath = "src/main/resources/input_day2.txt";
 
+    if (args.length > 0 && args[0].equals("--mapped")) {
+      SafeCounts safeCounts = new MappedReportValidator().validate(filePath);
+      System.out.println("Safe reports: " + safeCounts.safe());
+      System.out.println("Safe reports with possible removal: " + safeCounts.safeWithRemoval());
+      return;
+    }
     ReportAnalyzer reportAnalyzer = new ReportAnalyzer(filePath);
-    long analyze = reportAnalyzer.analyze();
-    System.out.println("Safe reports: " + analyze);
-    long l = reportAnalyzer.analyzeWithPossibleRemoval();
-    System.out.println("Safe reports with possible removal: " + l);
+    SafeCounts safeCounts = reportAnalyzer.analyzeAll();
+    System.out.println("Safe reports: " + safeCounts.safe());
+    System.out.println("Safe reports with possible removal: " + safeCounts.safeWithRemoval());
+
+    if (args.length > 1 && args[0].equals("--tolerance")) {
+      int maxRemovals = Integer.parseInt(args[1]);
+      if (maxRemovals < 0) {
+        System.out.println("Tolerance must not be negative: " + maxRemovals);
+      } else {
+        long[] toleranceCounts = reportAnalyzer.analyzeWithTolerance(maxRemovals);
+        for (int k = 0; k < toleranceCounts.length; k++) {
+          System.out.println("Safe reports with up to " + k + " removals: " + toleranceCounts[k]);
+        }
+      }
+    }
   }
 
   private static class ReportAnalyzer {
@@ -78,85 +101,376 @@ public class Day2 {
       this.filePath = filePath;
     }
 
-    public long analyze() {
-      List<List<Integer>> allData = loadData();
+    private PackedReports reports;
 
-      return allData.stream()
-          .filter(Day2.ReportAnalyzer::isValidLine)
-          .count();
+    /**
+     * Counts strictly safe and dampened safe reports in a single traversal. A strictly safe report is also safe with
+     * the Problem Dampener, so the dampened check only runs on reports that fail the strict one.
+     */
+    public SafeCounts analyzeAll() {
+      PackedReports allData = loadData();
+      long safe = 0;
+      long safeWithRemoval = 0;
+      for (int report = 0; report < allData.size(); report++) {
+        int from = allData.from(report);
+        int to = allData.to(report);
+        if (isValidLine(allData.levels(), from, to)) {
+          safe++;
+          safeWithRemoval++;
+        } else if (isValidLineWithRemoval(allData.levels(), from, to)) {
+          safeWithRemoval++;
+        }
+      }
+      return new SafeCounts(safe, safeWithRemoval);
     }
 
-    public long analyzeWithPossibleRemoval() {
-      List<List<Integer>> allData = loadData();
-
-      return allData.stream()
-          .filter(Day2.ReportAnalyzer::isValidLineWithRemoval)
-          .count();
+    /**
+     * Tolerance sweep over the loaded reports: element {@code k} of the result is the number of reports that are safe
+     * after removing at most {@code k} levels, for every {@code k} up to {@code maxRemovals}.
+     */
+    public long[] analyzeWithTolerance(int maxRemovals) {
+      if (maxRemovals < 0) {
+        throw new IllegalArgumentException("maxRemovals must not be negative: " + maxRemovals);
+      }
+      PackedReports allData = loadData();
+      long[] safeCounts = new long[maxRemovals + 1];
+      int[] scratch = new int[16];
+      for (int report = 0; report < allData.size(); report++) {
+        int from = allData.from(report);
+        int to = allData.to(report);
+        if (scratch.length < to - from) {
+          scratch = new int[to - from];
+        }
+        int removals = minRemovals(allData.levels(), from, to, maxRemovals, scratch);
+        if (removals <= maxRemovals) {
+          safeCounts[removals]++;
+        }
+      }
+      for (int k = 1; k <= maxRemovals; k++) {
+        safeCounts[k] += safeCounts[k - 1];
+      }
+      return safeCounts;
     }
 
-    private List<List<Integer>> loadData() {
-      try (Stream<String> lines = Files.lines(Paths.get(filePath))) {
-        return lines
-            .map(Day2.ReportAnalyzer::parseLine)
-            .collect(Collectors.toList());
-      } catch (Exception e) {
-        e.printStackTrace();
-        return new ArrayList<>();
+    private PackedReports loadData() {
+      if (reports == null) {
+        try {
+          reports = PackedReports.parse(Files.readAllBytes(Paths.get(filePath)));
+        } catch (Exception e) {
+          e.printStackTrace();
+          reports = PackedReports.parse(new byte[0]);
+        }
       }
+      return reports;
     }
 
-    private static List<Integer> parseLine(String line) {
-      return Stream.of(line.split("\\s+"))
-          .map(Integer::parseInt)
-          .collect(Collectors.toList());
+    /**
+     * Checks the report stored in {@code levels[from..to)} without the Problem Dampener.
+     */
+    static boolean isValidLine(int[] levels, int from, int to) {
+      if (from >= to) {
+        return false;
+      }
+      return isValidSkipping(levels, from, to, -1, true) || isValidSkipping(levels, from, to, -1, false);
     }
 
-    private static boolean isValidLine(List<Integer> data) {
-      if (data.isEmpty()) {
+    /**
+     * Checks the report stored in {@code levels[from..to)} with the Problem Dampener, without allocating. For a fixed
+     * direction, any removal that makes the report safe has to take out one of the two levels of the first bad step,
+     * so at most two removals per direction are tried.
+     */
+    static boolean isValidLineWithRemoval(int[] levels, int from, int to) {
+      if (from >= to) {
         return false;
       }
+      return isValidWithRemoval(levels, from, to, true) || isValidWithRemoval(levels, from, to, false);
+    }
 
-      int initialDIff = data.get(1) - data.get(0);
-      boolean increasing = initialDIff > 0;
-      boolean decreasing = initialDIff < 0;
+    private static boolean isValidWithRemoval(int[] levels, int from, int to, boolean increasing) {
+      int violation = firstViolation(levels, from, to, increasing);
+      if (violation < 0) {
+        return true;
+      }
+      return isValidSkipping(levels, from, to, violation, increasing)
+          || isValidSkipping(levels, from, to, violation + 1, increasing);
+    }
 
-      for (int i = 0; i < data.size() - 1; i++) {
-        int diff = data.get(i + 1) - data.get(i);
-        if (Math.abs(diff) < 1 || Math.abs(diff) > 3) {
-          return false;
+    private static int firstViolation(int[] levels, int from, int to, boolean increasing) {
+      for (int i = from; i < to - 1; i++) {
+        if (!isSafeStep(levels[i], levels[i + 1], increasing)) {
+          return i;
         }
+      }
+      return -1;
+    }
 
-        if (increasing && diff <= 0) {
-          return false;
+    private static boolean isValidSkipping(int[] levels, int from, int to, int skip, boolean increasing) {
+      int previous = -1;
+      for (int i = from; i < to; i++) {
+        if (i == skip) {
+          continue;
         }
-        if (decreasing && diff >= 0) {
+        if (previous >= 0 && !isSafeStep(levels[previous], levels[i], increasing)) {
           return false;
         }
+        previous = i;
       }
       return true;
     }
 
-    public static boolean isValidLineWithRemoval(List<Integer> data) {
-      if (isValidLine(data)) {
-        return true;
+    /**
+     * Minimum number of levels to remove from {@code levels[from..to)} to make the report safe, or
+     * {@code maxRemovals + 1} when more than {@code maxRemovals} would be needed. For each direction,
+     * {@code scratch[i]} holds the fewest removals that leave a safe report ending at level {@code i}. Two kept levels
+     * can be at most {@code maxRemovals + 1} apart, so each level only looks back that far and a report costs
+     * O(n * k).
+     */
+    static int minRemovals(int[] levels, int from, int to, int maxRemovals, int[] scratch) {
+      if (from >= to) {
+        return maxRemovals + 1;
+      }
+      return Math.min(minRemovals(levels, from, to, maxRemovals, scratch, true),
+          minRemovals(levels, from, to, maxRemovals, scratch, false));
+    }
+
+    private static int minRemovals(int[] levels, int from, int to, int maxRemovals, int[] scratch,
+        boolean increasing) {
+      int length = to - from;
+      int best = maxRemovals + 1;
+      for (int i = 0; i < length; i++) {
+        int removals = i;
+        for (int j = Math.max(0, i - maxRemovals - 1); j < i; j++) {
+          if (isSafeStep(levels[from + j], levels[from + i], increasing)) {
+            removals = Math.min(removals, scratch[j] + i - j - 1);
+          }
+        }
+        scratch[i] = removals;
+        best = Math.min(best, removals + length - 1 - i);
+      }
+      return best;
+    }
+
+    private static boolean isSafeStep(int current, int next, boolean increasing) {
+      int diff = increasing ? next - current : current - next;
+      return diff >= 1 && diff <= 3;
+    }
+  }
+
+  /**
+   * Validates reports straight from a memory-mapped file. The file is cut into newline-aligned chunks, a few per core,
+   * and each chunk is mapped and scanned by its own fork-join task into a scratch {@code int[]}, so no line is ever
+   * turned into a {@code String}. The per-chunk counts are summed on the way back up.
+   */
+  private static class MappedReportValidator {
+
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    private static final int CHUNKS_PER_CORE = 4;
+
+    public SafeCounts validate(String filePath) {
+      try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+        long[] boundaries = chunkBoundaries(channel);
+        return ForkJoinPool.commonPool().invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1));
+      } catch (IOException e) {
+        e.printStackTrace();
+        return new SafeCounts(0, 0);
+      }
+    }
+
+    private static long[] chunkBoundaries(FileChannel channel) throws IOException {
+      long fileSize = channel.size();
+      int parallelism = ForkJoinPool.commonPool().getParallelism() * CHUNKS_PER_CORE;
+      long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(1, (fileSize + parallelism - 1) / parallelism));
+
+      List<Long> boundaries = new ArrayList<>();
+      boundaries.add(0L);
+      long position = 0;
+      while (position < fileSize) {
+        position = Math.min(fileSize, alignToNextLine(channel, position + chunkSize, fileSize));
+        boundaries.add(position);
+      }
+      return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // returns the offset just past the first newline at or after position, or the file size if there is none
+    private static long alignToNextLine(FileChannel channel, long position, long fileSize) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(4096);
+      while (position < fileSize) {
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        if (read <= 0) {
+          break;
+        }
+        for (int i = 0; i < read; i++) {
+          if (buffer.get(i) == '\n') {
+            return position + i + 1;
+          }
+        }
+        position += read;
+      }
+      return fileSize;
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private static class ChunkTask extends RecursiveTask<SafeCounts> {
+
+      private final FileChannel channel;
+      private final long[] boundaries;
+      private final int fromChunk;
+      private final int toChunk;
+
+      ChunkTask(FileChannel channel, long[] boundaries, int fromChunk, int toChunk) {
+        this.channel = channel;
+        this.boundaries = boundaries;
+        this.fromChunk = fromChunk;
+        this.toChunk = toChunk;
+      }
+
+      @Override
+      protected SafeCounts compute() {
+        if (toChunk - fromChunk > 1) {
+          int mid = (fromChunk + toChunk) >>> 1;
+          ChunkTask left = new ChunkTask(channel, boundaries, fromChunk, mid);
+          left.fork();
+          SafeCounts right = new ChunkTask(channel, boundaries, mid, toChunk).compute();
+          SafeCounts leftCounts = left.join();
+          return new SafeCounts(leftCounts.safe() + right.safe(),
+              leftCounts.safeWithRemoval() + right.safeWithRemoval());
+        }
+        if (toChunk == fromChunk) {
+          return new SafeCounts(0, 0);
+        }
+        try {
+          long start = boundaries[fromChunk];
+          MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, boundaries[toChunk] - start);
+          return scan(chunk);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      private static SafeCounts scan(MappedByteBuffer chunk) {
+        int[] levels = new int[64];
+        int count = 0;
+        int value = 0;
+        boolean negative = false;
+        boolean inNumber = false;
+        long safe = 0;
+        long safeWithRemoval = 0;
+
+        int limit = chunk.limit();
+        for (int i = 0; i <= limit; i++) {
+          byte b = i < limit ? chunk.get(i) : (byte) '\n';
+          if (b >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            inNumber = true;
+            continue;
+          }
+          if (b == '-') {
+            negative = true;
+            continue;
+          }
+          if (inNumber) {
+            if (count == levels.length) {
+              levels = Arrays.copyOf(levels, levels.length * 2);
+            }
+            levels[count++] = negative ? -value : value;
+            value = 0;
+            negative = false;
+            inNumber = false;
+          }
+          if (b == '\n' && count > 0) {
+            if (ReportAnalyzer.isValidLine(levels, 0, count)) {
+              safe++;
+              safeWithRemoval++;
+            } else if (ReportAnalyzer.isValidLineWithRemoval(levels, 0, count)) {
+              safeWithRemoval++;
+            }
+            count = 0;
+          }
+        }
+        return new SafeCounts(safe, safeWithRemoval);
       }
-      return IntStream.range(0, data.size())
-          .anyMatch(i -> isValidLine(removeAt(data, i)));
+    }
+  }
+
+  private record SafeCounts(long safe, long safeWithRemoval) {
+  }
+
+  /**
+   * All reports packed into one {@code int[]} of levels, with report {@code i} stored in
+   * {@code levels[offsets[i]..offsets[i + 1])}.
+   */
+  private static class PackedReports {
+
+    private final int[] levels;
+    private final int[] offsets;
+    private final int size;
+
+    private PackedReports(int[] levels, int[] offsets, int size) {
+      this.levels = levels;
+      this.offsets = offsets;
+      this.size = size;
+    }
+
+    /**
+     * Parses whitespace separated levels straight from the raw bytes, one report per non-empty line.
+     */
+    static PackedReports parse(byte[] bytes) {
+      int[] levels = new int[Math.max(16, bytes.length / 2)];
+      int[] offsets = new int[Math.max(16, bytes.length / 8)];
+      int levelCount = 0;
+      int size = 0;
+      int value = 0;
+      boolean negative = false;
+      boolean inNumber = false;
+      int reportStart = 0;
+
+      for (int i = 0; i <= bytes.length; i++) {
+        byte b = i < bytes.length ? bytes[i] : (byte) '\n';
+        if (b >= '0' && b <= '9') {
+          value = value * 10 + (b - '0');
+          inNumber = true;
+          continue;
+        }
+        if (b == '-') {
+          negative = true;
+          continue;
+        }
+        if (inNumber) {
+          if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+          }
+          levels[levelCount++] = negative ? -value : value;
+          value = 0;
+          negative = false;
+          inNumber = false;
+        }
+        if (b == '\n' && levelCount > reportStart) {
+          if (size + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+          }
+          offsets[size++] = reportStart;
+          offsets[size] = levelCount;
+          reportStart = levelCount;
+        }
+      }
+      return new PackedReports(levels, offsets, size);
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] levels() {
+      return levels;
+    }
 
-//      for (int i = 0; i < data.size(); i++) {
-//        List<Integer> copy = new ArrayList<>(data);
-//        copy.remove(i);
-//        if (isValidLine(copy)) {
-//          return true;
-//        }
-//      }
-//      return false;
+    int from(int report) {
+      return offsets[report];
     }
 
-    private static List<Integer> removeAt(List<Integer> list, int index) {
-      List<Integer> result = new ArrayList<>(list);
-      result.remove(index);
-      return result;
+    int to(int report) {
+      return offsets[report + 1];
     }
   }
 }
@@ -1,11 +1,19 @@
 package com.advent2024;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * --- Day 3: Mull It Over --- "Our computers are having issues, so I have no idea if we have any Chief Historians in
@@ -55,59 +63,380 @@ public class Day3 {
 
   public static void main(String[] args) {
     String filePath = "src/main/resources/input_day3.txt";
-    MemoryProcessor memoryProcessor = new MemoryProcessor();
-    List<String> strings = memoryProcessor.readInput(filePath);
-    long total = memoryProcessor.calculateTotal(strings);
-    System.out.println("Total: " + total);
-    long effectiveTotal = memoryProcessor.calculateEffectiveTotal(strings);
-    System.out.println("Effective total: " + effectiveTotal);
+    Totals totals;
+    if (args.length > 0 && args[0].equals("--stream")) {
+      try (InputStream input = Files.newInputStream(Paths.get(filePath))) {
+        totals = new StreamingMemoryScanner().scan(input, progress -> { });
+      } catch (IOException e) {
+        e.printStackTrace();
+        return;
+      }
+    } else if (args.length > 0 && args[0].equals("--parallel")) {
+      totals = new ParallelMemoryScanner().scan(filePath);
+    } else {
+      MemoryProcessor memoryProcessor = new MemoryProcessor();
+      totals = memoryProcessor.scan(memoryProcessor.readBytes(filePath));
+    }
+    System.out.println("Total: " + totals.total());
+    System.out.println("Effective total: " + totals.effectiveTotal());
   }
 
   private static class MemoryProcessor {
 
-    public List<String> readInput(String filePath) {
+    public byte[] readBytes(String filePath) {
       try {
-        return Files.readAllLines(Paths.get(filePath));
+        return Files.readAllBytes(Paths.get(filePath));
       } catch (Exception e) {
         e.printStackTrace();
       }
-      return new ArrayList<>();
-    }
-
-    public long calculateTotal(List<String> instructions) {
-      long total = 0;
-      Pattern pattern = Pattern.compile("mul\\((\\d+),(\\d+)\\)");
-      for (String line : instructions) {
-        Matcher matcher = pattern.matcher(line);
-        while (matcher.find()) {
-          int x = Integer.parseInt(matcher.group(1));
-          int y = Integer.parseInt(matcher.group(2));
-          total += (long) x * y;
+      return new byte[0];
+    }
+
+    public Totals scan(byte[] memory) {
+      InstructionScanner scanner = new InstructionScanner();
+      scanner.scan(memory, 0, memory.length);
+      return scanner.totals();
+    }
+  }
+
+  private record Totals(long total, long effectiveTotal) {
+  }
+
+  /**
+   * Result of scanning one chunk with the do/don't state at its start left open: the effective total if the chunk
+   * starts enabled or disabled, and the state it leaves behind when it contains a do() or don't(). Merging two
+   * adjacent summaries is associative, so chunks can be combined in any grouping.
+   */
+  private record ChunkSummary(long total, long effectiveIfEnabled, long effectiveIfDisabled, boolean toggled,
+                              boolean enabledAtEnd) {
+
+    static final ChunkSummary EMPTY = new ChunkSummary(0, 0, 0, false, true);
+
+    boolean endsEnabled(boolean startsEnabled) {
+      return toggled ? enabledAtEnd : startsEnabled;
+    }
+
+    ChunkSummary merge(ChunkSummary next) {
+      return new ChunkSummary(
+          total + next.total,
+          effectiveIfEnabled + (endsEnabled(true) ? next.effectiveIfEnabled : next.effectiveIfDisabled),
+          effectiveIfDisabled + (endsEnabled(false) ? next.effectiveIfEnabled : next.effectiveIfDisabled),
+          toggled || next.toggled,
+          next.toggled ? next.enabledAtEnd : enabledAtEnd);
+    }
+
+    Totals totals() {
+      return new Totals(total, effectiveIfEnabled);
+    }
+  }
+
+  /**
+   * Scans a memory image on all cores. The file is cut into chunks that each own the instructions starting inside
+   * them, and every chunk is mapped with enough trailing bytes to finish an instruction that straddles its end. The
+   * chunk summaries are merged in order on the way back up the fork-join tree.
+   */
+  private static class ParallelMemoryScanner {
+
+    private static final int MAX_INSTRUCTION_LENGTH = "mul(123,456)".length();
+    private static final long MIN_CHUNK_SIZE = 1L << 16;
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    public Totals scan(String filePath) {
+      try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+        long fileSize = channel.size();
+        int parallelism = ForkJoinPool.commonPool().getParallelism() * 4;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, fileSize / parallelism + 1));
+        int chunks = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        return ForkJoinPool.commonPool().invoke(new ChunkTask(channel, fileSize, chunkSize, 0, chunks)).totals();
+      } catch (IOException e) {
+        e.printStackTrace();
+        return new Totals(0, 0);
+      }
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private static class ChunkTask extends RecursiveTask<ChunkSummary> {
+
+      private final FileChannel channel;
+      private final long fileSize;
+      private final long chunkSize;
+      private final int fromChunk;
+      private final int toChunk;
+
+      ChunkTask(FileChannel channel, long fileSize, long chunkSize, int fromChunk, int toChunk) {
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.fromChunk = fromChunk;
+        this.toChunk = toChunk;
+      }
+
+      @Override
+      protected ChunkSummary compute() {
+        if (toChunk - fromChunk > 1) {
+          int mid = (fromChunk + toChunk) >>> 1;
+          ChunkTask left = new ChunkTask(channel, fileSize, chunkSize, fromChunk, mid);
+          left.fork();
+          ChunkSummary right = new ChunkTask(channel, fileSize, chunkSize, mid, toChunk).compute();
+          return left.join().merge(right);
         }
+        if (toChunk == fromChunk) {
+          return ChunkSummary.EMPTY;
+        }
+        try {
+          long start = fromChunk * chunkSize;
+          int owned = (int) Math.min(chunkSize, fileSize - start);
+          long mapped = Math.min(fileSize - start, owned + MAX_INSTRUCTION_LENGTH - 1L);
+          MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, mapped);
+
+          InstructionScanner scanner = new InstructionScanner();
+          scanner.scan(chunk.limit(owned));
+          scanner.finish(chunk.limit((int) mapped), owned);
+          return scanner.summary();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scans a memory image as it is read, through one fixed-size buffer. The state machine keeps its partial
+   * instruction between buffers, so instructions split across reads are still recognized, and the running totals
+   * and the current do/don't state can be read after every buffer.
+   */
+  private static class StreamingMemoryScanner {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InstructionScanner scanner = new InstructionScanner();
+    private final ByteBuffer buffer;
+
+    public StreamingMemoryScanner() {
+      this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamingMemoryScanner(int bufferSize) {
+      buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    public Totals scan(InputStream input, Consumer<Totals> onProgress) throws IOException {
+      return scan(Channels.newChannel(input), onProgress);
+    }
+
+    public Totals scan(ReadableByteChannel channel, Consumer<Totals> onProgress) throws IOException {
+      while (readNext(channel)) {
+        onProgress.accept(totals());
       }
-      return total;
-    }
-
-    public long calculateEffectiveTotal(List<String> instructions) {
-      long total = 0;
-      boolean executeMul = true;
-      Pattern pattern = Pattern.compile("do\\(\\)|don't\\(\\)|mul\\((\\d+),(\\d+)\\)");
-
-      for (String line : instructions) {
-        Matcher matcher = pattern.matcher(line);
-        while (matcher.find()) {
-          if (matcher.group().equals("do()")) {
-            executeMul = true;
-          } else if (matcher.group().equals("don't()")) {
-            executeMul = false;
-          } else if (executeMul) {
-            int x = Integer.parseInt(matcher.group(1));
-            int y = Integer.parseInt(matcher.group(2));
-            total += (long) x * y;
+      return totals();
+    }
+
+    /**
+     * Reads and scans one buffer from the channel; returns false once the channel is exhausted.
+     */
+    public boolean readNext(ReadableByteChannel channel) throws IOException {
+      buffer.clear();
+      if (channel.read(buffer) < 0) {
+        return false;
+      }
+      buffer.flip();
+      scanner.scan(buffer);
+      return true;
+    }
+
+    public Totals totals() {
+      return scanner.totals();
+    }
+
+    public boolean isEnabled() {
+      return scanner.isEnabled();
+    }
+  }
+
+  /**
+   * Hand-written state machine for {@code mul(X,Y)}, {@code do()} and {@code don't()}, where X and Y have one to three
+   * digits. Operands are accumulated digit by digit, so scanning allocates nothing. None of the instructions contains
+   * its own first letter after the start, so when a byte breaks a partial match it only needs to be retried as the
+   * start of a new instruction.
+   */
+  private static class InstructionScanner {
+
+    private static final int START = 0;
+    private static final int M = 1;
+    private static final int MU = 2;
+    private static final int MUL = 3;
+    private static final int MUL_OPEN = 4;
+    private static final int FIRST_OPERAND = 5;
+    private static final int COMMA = 6;
+    private static final int SECOND_OPERAND = 7;
+    private static final int D = 8;
+    private static final int DO = 9;
+    private static final int DO_OPEN = 10;
+    private static final int DON = 11;
+    private static final int DON_APOSTROPHE = 12;
+    private static final int DON_T = 13;
+    private static final int DON_T_OPEN = 14;
+
+    private int state = START;
+    private int x;
+    private int y;
+    private int digits;
+    private boolean toggled;
+    private boolean enabled = true;
+    private long total;
+    private long untoggledTotal;
+    private long toggledTotal;
+
+    void scan(byte[] bytes, int from, int to) {
+      for (int i = from; i < to; i++) {
+        accept(bytes[i]);
+      }
+    }
+
+    void scan(ByteBuffer buffer) {
+      for (int i = buffer.position(); i < buffer.limit(); i++) {
+        accept(buffer.get(i));
+      }
+      buffer.position(buffer.limit());
+    }
+
+    void accept(byte b) {
+      if (!advance(b)) {
+        state = START;
+        advance(b);
+      }
+    }
+
+    // returns false when b cannot continue the current partial instruction
+    private boolean advance(byte b) {
+      switch (state) {
+        case START:
+          if (b == 'm') {
+            state = M;
+          } else if (b == 'd') {
+            state = D;
+          }
+          return true;
+        case M:
+          return expect(b, 'u', MU);
+        case MU:
+          return expect(b, 'l', MUL);
+        case MUL:
+          return expect(b, '(', MUL_OPEN);
+        case MUL_OPEN:
+          if (!isDigit(b)) {
+            return false;
           }
+          x = b - '0';
+          digits = 1;
+          state = FIRST_OPERAND;
+          return true;
+        case FIRST_OPERAND:
+          if (b == ',') {
+            state = COMMA;
+            return true;
+          }
+          if (!isDigit(b) || digits == 3) {
+            return false;
+          }
+          x = x * 10 + (b - '0');
+          digits++;
+          return true;
+        case COMMA:
+          if (!isDigit(b)) {
+            return false;
+          }
+          y = b - '0';
+          digits = 1;
+          state = SECOND_OPERAND;
+          return true;
+        case SECOND_OPERAND:
+          if (b == ')') {
+            long product = (long) x * y;
+            total += product;
+            if (!toggled) {
+              untoggledTotal += product;
+            } else if (enabled) {
+              toggledTotal += product;
+            }
+            state = START;
+            return true;
+          }
+          if (!isDigit(b) || digits == 3) {
+            return false;
+          }
+          y = y * 10 + (b - '0');
+          digits++;
+          return true;
+        case D:
+          return expect(b, 'o', DO);
+        case DO:
+          if (b == 'n') {
+            state = DON;
+            return true;
+          }
+          return expect(b, '(', DO_OPEN);
+        case DO_OPEN:
+          if (b != ')') {
+            return false;
+          }
+          toggled = true;
+          enabled = true;
+          state = START;
+          return true;
+        case DON:
+          return expect(b, '\'', DON_APOSTROPHE);
+        case DON_APOSTROPHE:
+          return expect(b, 't', DON_T);
+        case DON_T:
+          return expect(b, '(', DON_T_OPEN);
+        case DON_T_OPEN:
+          if (b != ')') {
+            return false;
+          }
+          toggled = true;
+          enabled = false;
+          state = START;
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    private boolean expect(byte b, char expected, int next) {
+      if (b != expected) {
+        return false;
+      }
+      state = next;
+      return true;
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Finishes an instruction that started before {@code from} using the bytes of the next chunk, without letting
+     * those bytes start an instruction of their own.
+     */
+    void finish(ByteBuffer buffer, int from) {
+      for (int i = from; i < buffer.limit() && state != START; i++) {
+        if (!advance(buffer.get(i))) {
+          state = START;
         }
       }
-      return total;
+    }
+
+    boolean isEnabled() {
+      return enabled;
+    }
+
+    Totals totals() {
+      return new Totals(total, untoggledTotal + toggledTotal);
+    }
+
+    ChunkSummary summary() {
+      return new ChunkSummary(total, untoggledTotal + toggledTotal, toggledTotal, toggled, enabled);
     }
   }
 }
@@ -1,10 +1,23 @@
 package com.advent2024;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * --- Day 4: Ceres Search --- "Looks like the Chief's not here. Next!" One of The Historians pulls out a device and
@@ -45,11 +58,17 @@ public class Day4 {
 
   public static void main(String[] args) {
     String filePath = "src/main/resources/input_day4.txt";
+    if (args.length > 0 && args[0].equals("--tiled")) {
+      SearchCounts counts = new TiledWordSearch("XMAS").count(filePath);
+      System.out.println("Total occurrences of XMAS: " + counts.words());
+      System.out.println("Total occurrences of XMAS in X shape: " + counts.xShapes());
+      return;
+    }
     WordSearchProcessor wordSearchProcessor = new WordSearchProcessor();
-    List<String> strings = wordSearchProcessor.readInput(filePath);
-    long total = wordSearchProcessor.calculateTotal(strings);
+    ByteGrid grid = ByteGrid.of(wordSearchProcessor.readInput(filePath));
+    long total = wordSearchProcessor.calculateTotal(grid);
     System.out.println("Total occurrences of XMAS: " + total);
-    long xShapeOccurrences = wordSearchProcessor.calculateXShapeOccurrences(strings);
+    long xShapeOccurrences = wordSearchProcessor.calculateXShapeOccurrences(grid);
     System.out.println("Total occurrences of XMAS in X shape: " + xShapeOccurrences);
   }
 
@@ -84,6 +103,66 @@ public class Day4 {
       return total;
     }
 
+    /**
+     * Counts XMAS in place on a flat grid: only cells holding the first letter are visited, and from each one the 8
+     * direction vectors are followed directly, without building any row, column or diagonal strings.
+     */
+    public long calculateTotal(ByteGrid grid) {
+      return countWord(grid, "XMAS".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public long countWord(ByteGrid grid, byte[] word) {
+      if (word.length == 0) {
+        return 0;
+      }
+      byte[] cells = grid.cells();
+      int rows = grid.rows();
+      int cols = grid.cols();
+      int reach = word.length - 1;
+      long count = 0;
+      for (int row = 0; row < rows; row++) {
+        int rowStart = row * cols;
+        for (int col = 0; col < cols; col++) {
+          if (cells[rowStart + col] != word[0]) {
+            continue;
+          }
+          for (int[] direction : ByteGrid.DIRECTIONS) {
+            int endRow = row + direction[0] * reach;
+            int endCol = col + direction[1] * reach;
+            if (endRow < 0 || endRow >= rows || endCol < 0 || endCol >= cols) {
+              continue;
+            }
+            int step = direction[0] * cols + direction[1];
+            int index = rowStart + col;
+            int matched = 1;
+            while (matched < word.length && cells[index + step * matched] == word[matched]) {
+              matched++;
+            }
+            if (matched == word.length) {
+              count++;
+            }
+          }
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Counts every word of the dictionary in all 8 directions with a single Aho-Corasick pass; see
+     * {@link MultiWordSearch}.
+     */
+    public long[] countWords(ByteGrid grid, List<String> words) {
+      return new MultiWordSearch(words).count(grid);
+    }
+
+    /**
+     * Counts placements of each template, including its rotations and reflections, in one sweep; see
+     * {@link ShapeMatcher}.
+     */
+    public long[] countShapes(ByteGrid grid, List<ShapeTemplate> templates) {
+      return new ShapeMatcher(templates, true, true).count(grid);
+    }
+
     private long countHorizontalOccurrences(List<String> grid, long total) {
       for (String row : grid) {
         total += countOccurrencesInLine(row, "XMAS");
@@ -152,6 +231,39 @@ public class Day4 {
       return count;
     }
 
+    /**
+     * Bit-parallel version of {@link #calculateXShapeOccurrences(List)}: the {@link #isMAS} test on both diagonals is
+     * evaluated for 64 centres at once on the letter bitplanes of the rows above and below.
+     */
+    public long calculateXShapeOccurrences(ByteGrid grid) {
+      LetterBitboard board = new LetterBitboard(grid);
+      int words = board.words();
+      long[] m = board.plane('M');
+      long[] a = board.plane('A');
+      long[] s = board.plane('S');
+      long count = 0;
+      for (int row = 1; row < grid.rows() - 1; row++) {
+        int above = (row - 1) * words;
+        int centre = row * words;
+        int below = (row + 1) * words;
+        for (int w = 0; w < words; w++) {
+          long topLeftM = LetterBitboard.fromLeft(m, above, w);
+          long topLeftS = LetterBitboard.fromLeft(s, above, w);
+          long topRightM = LetterBitboard.fromRight(m, above, w, words);
+          long topRightS = LetterBitboard.fromRight(s, above, w, words);
+          long bottomLeftM = LetterBitboard.fromLeft(m, below, w);
+          long bottomLeftS = LetterBitboard.fromLeft(s, below, w);
+          long bottomRightM = LetterBitboard.fromRight(m, below, w, words);
+          long bottomRightS = LetterBitboard.fromRight(s, below, w, words);
+
+          long mainDiagonal = (topLeftM & bottomRightS) | (topLeftS & bottomRightM);
+          long antiDiagonal = (topRightM & bottomLeftS) | (topRightS & bottomLeftM);
+          count += Long.bitCount(a[centre + w] & mainDiagonal & antiDiagonal);
+        }
+      }
+      return count;
+    }
+
     private int countValidXShapes(List<String> grid, int centerRow, int centerCol) {
       char topLeft = grid.get(centerRow - 1).charAt(centerCol - 1);
       char topRight = grid.get(centerRow - 1).charAt(centerCol + 1);
@@ -173,4 +285,781 @@ public class Day4 {
     }
   }
 
+  /**
+   * Aho-Corasick automaton over a word list, compiled once into a dense transition table over the letters that occur
+   * in the words. Every row, column, diagonal and anti-diagonal of a grid is streamed through it forwards and
+   * backwards. Each step only bumps a hit counter for the reached state, and the hits are pushed down the failure
+   * links once at the end, so the per-cell cost does not depend on the dictionary size. Like
+   * {@link WordSearchProcessor#calculateTotal(List)}, a palindrome is counted once per reading direction.
+   */
+  public static class MultiWordSearch {
+
+    private final List<String> words;
+    private final int[] alphabet = new int[256];
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] failure;
+    private final int[] bfsOrder;
+    private final int[] wordStates;
+
+    public MultiWordSearch(List<String> words) {
+      this.words = words;
+      int letters = 1;
+      int maxStates = 1;
+      for (String word : words) {
+        for (byte b : word.getBytes(StandardCharsets.US_ASCII)) {
+          if (alphabet[b & 0xFF] == 0) {
+            alphabet[b & 0xFF] = letters++;
+          }
+        }
+        maxStates += word.length();
+      }
+      alphabetSize = letters;
+
+      int[] trie = new int[maxStates * alphabetSize];
+      wordStates = new int[words.size()];
+      int states = 1;
+      for (int w = 0; w < words.size(); w++) {
+        int state = 0;
+        for (byte b : words.get(w).getBytes(StandardCharsets.US_ASCII)) {
+          int slot = state * alphabetSize + alphabet[b & 0xFF];
+          if (trie[slot] == 0) {
+            trie[slot] = states++;
+          }
+          state = trie[slot];
+        }
+        wordStates[w] = state;
+      }
+
+      // breadth-first pass turning the trie into a full transition table with failure links
+      transitions = Arrays.copyOf(trie, states * alphabetSize);
+      failure = new int[states];
+      bfsOrder = new int[states];
+      int head = 0;
+      int tail = 0;
+      bfsOrder[tail++] = 0;
+      while (head < tail) {
+        int state = bfsOrder[head++];
+        for (int letter = 1; letter < alphabetSize; letter++) {
+          int slot = state * alphabetSize + letter;
+          int child = trie[slot];
+          int fallback = state == 0 ? 0 : transitions[failure[state] * alphabetSize + letter];
+          if (child != 0) {
+            failure[child] = fallback;
+            bfsOrder[tail++] = child;
+          } else {
+            transitions[slot] = fallback;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns how often each word occurs in the grid, in the order the words were given.
+     */
+    public long[] count(ByteGrid grid) {
+      long[] hits = new long[failure.length];
+      int rows = grid.rows();
+      int cols = grid.cols();
+
+      for (int row = 0; row < rows; row++) {
+        scanLine(grid, row * cols, 1, cols, hits);
+      }
+      for (int col = 0; col < cols; col++) {
+        scanLine(grid, col, cols, rows, hits);
+      }
+      for (int row = 0; row < rows; row++) {
+        scanLine(grid, row * cols, cols + 1, Math.min(rows - row, cols), hits);
+      }
+      for (int col = 1; col < cols; col++) {
+        scanLine(grid, col, cols + 1, Math.min(rows, cols - col), hits);
+      }
+      for (int col = 0; col < cols; col++) {
+        scanLine(grid, col, cols - 1, Math.min(rows, col + 1), hits);
+      }
+      for (int row = 1; row < rows; row++) {
+        scanLine(grid, row * cols + cols - 1, cols - 1, Math.min(rows - row, cols), hits);
+      }
+
+      for (int i = bfsOrder.length - 1; i > 0; i--) {
+        int state = bfsOrder[i];
+        hits[failure[state]] += hits[state];
+      }
+      long[] counts = new long[words.size()];
+      for (int w = 0; w < counts.length; w++) {
+        counts[w] = words.get(w).isEmpty() ? 0 : hits[wordStates[w]];
+      }
+      return counts;
+    }
+
+    // streams one line of the grid through the automaton in both directions
+    private void scanLine(ByteGrid grid, int start, int step, int length, long[] hits) {
+      if (length <= 0) {
+        return;
+      }
+      byte[] cells = grid.cells();
+      int state = 0;
+      for (int i = 0, index = start; i < length; i++, index += step) {
+        state = transitions[state * alphabetSize + alphabet[cells[index] & 0xFF]];
+        hits[state]++;
+      }
+      state = 0;
+      for (int i = 0, index = start + (length - 1) * step; i < length; i++, index -= step) {
+        state = transitions[state * alphabetSize + alphabet[cells[index] & 0xFF]];
+        hits[state]++;
+      }
+    }
+  }
+
+  /**
+   * Rectangular 2D pattern where {@link #WILDCARD} matches any letter.
+   */
+  public record ShapeTemplate(List<String> rows) {
+
+    public static final char WILDCARD = '.';
+    public static final ShapeTemplate X_MAS = new ShapeTemplate(List.of("M.S", ".A.", "M.S"));
+
+    public ShapeTemplate {
+      if (rows.isEmpty() || rows.get(0).isEmpty()) {
+        throw new IllegalArgumentException("Template must not be empty");
+      }
+      int width = rows.get(0).length();
+      if (rows.stream().anyMatch(row -> row.length() != width)) {
+        throw new IllegalArgumentException("Template rows must all have the same length");
+      }
+      rows = List.copyOf(rows);
+    }
+
+    public int height() {
+      return rows.size();
+    }
+
+    public int width() {
+      return rows.get(0).length();
+    }
+
+    public ShapeTemplate rotate() {
+      List<String> rotated = new ArrayList<>();
+      for (int col = 0; col < width(); col++) {
+        StringBuilder line = new StringBuilder();
+        for (int row = height() - 1; row >= 0; row--) {
+          line.append(rows.get(row).charAt(col));
+        }
+        rotated.add(line.toString());
+      }
+      return new ShapeTemplate(rotated);
+    }
+
+    public ShapeTemplate reflect() {
+      return new ShapeTemplate(rows.stream().map(row -> new StringBuilder(row).reverse().toString()).toList());
+    }
+
+    /**
+     * The distinct shapes obtained from this template by the requested rotations and reflections.
+     */
+    public Set<ShapeTemplate> variants(boolean rotations, boolean reflections) {
+      Set<ShapeTemplate> variants = new LinkedHashSet<>();
+      ShapeTemplate base = this;
+      for (int flip = 0; flip < (reflections ? 2 : 1); flip++) {
+        ShapeTemplate current = base;
+        for (int turn = 0; turn < (rotations ? 4 : 1); turn++) {
+          variants.add(current);
+          current = current.rotate();
+        }
+        base = base.reflect();
+      }
+      return variants;
+    }
+  }
+
+  /**
+   * Counts placements of many masked 2D templates in a single top-to-bottom sweep, in the spirit of Baker-Bird. Every
+   * distinct template row is split into its solid fragments, and all fragments go into one Aho-Corasick automaton
+   * that each grid row is streamed through. A template row matches at a column once all of its fragments have been
+   * seen at the right offsets. Each template then runs a Shift-And over the rows of every column: bit {@code k} is set
+   * while its first {@code k + 1} rows have matched the grid rows ending at the current one. A single cell can match
+   * several template rows because of wildcards, which plain Baker-Bird column automata cannot handle. Each row costs
+   * O(columns * (row patterns + templates)) plus the fragment hits, with no factor for the template area.
+   */
+  public static class ShapeMatcher {
+
+    private final int variantCount;
+    private final int[] variantSource;
+    private final int[] variantWidth;
+    private final int[] variantHeight;
+    private final int sourceCount;
+
+    private final int patternCount;
+    private final int[] patternWidth;
+    private final int[] patternFragments;
+    private final int[][] patternUses;
+
+    private final int[] fragmentLength;
+    private final int[][] fragmentUses;
+
+    private final int[] alphabet = new int[256];
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] terminal;
+    private final int[] outputLink;
+
+    public ShapeMatcher(List<ShapeTemplate> templates, boolean rotations, boolean reflections) {
+      sourceCount = templates.size();
+      List<ShapeTemplate> variants = new ArrayList<>();
+      List<Integer> sources = new ArrayList<>();
+      for (int t = 0; t < templates.size(); t++) {
+        for (ShapeTemplate variant : templates.get(t).variants(rotations, reflections)) {
+          if (variant.height() > Long.SIZE) {
+            throw new IllegalArgumentException("Templates can be at most " + Long.SIZE + " rows high");
+          }
+          variants.add(variant);
+          sources.add(t);
+        }
+      }
+      variantCount = variants.size();
+      variantSource = sources.stream().mapToInt(Integer::intValue).toArray();
+      variantWidth = variants.stream().mapToInt(ShapeTemplate::width).toArray();
+      variantHeight = variants.stream().mapToInt(ShapeTemplate::height).toArray();
+
+      // distinct template rows, and which (variant, row) pairs use each of them
+      Map<String, Integer> patternIds = new LinkedHashMap<>();
+      List<List<Integer>> uses = new ArrayList<>();
+      for (int v = 0; v < variantCount; v++) {
+        List<String> rows = variants.get(v).rows();
+        for (int k = 0; k < rows.size(); k++) {
+          int id = patternIds.computeIfAbsent(rows.get(k), key -> patternIds.size());
+          if (id == uses.size()) {
+            uses.add(new ArrayList<>());
+          }
+          uses.get(id).add(v * Long.SIZE + k);
+        }
+      }
+      patternCount = patternIds.size();
+      patternWidth = new int[patternCount];
+      patternFragments = new int[patternCount];
+      patternUses = new int[patternCount][];
+      for (int p = 0; p < patternCount; p++) {
+        patternUses[p] = uses.get(p).stream().mapToInt(Integer::intValue).toArray();
+      }
+
+      // solid fragments of every template row, and which (pattern, offset) pairs use each of them
+      Map<String, Integer> fragmentIds = new LinkedHashMap<>();
+      List<List<Integer>> fragmentUseLists = new ArrayList<>();
+      for (Map.Entry<String, Integer> entry : patternIds.entrySet()) {
+        String pattern = entry.getKey();
+        int p = entry.getValue();
+        patternWidth[p] = pattern.length();
+        int col = 0;
+        while (col < pattern.length()) {
+          if (pattern.charAt(col) == ShapeTemplate.WILDCARD) {
+            col++;
+            continue;
+          }
+          int end = col;
+          while (end < pattern.length() && pattern.charAt(end) != ShapeTemplate.WILDCARD) {
+            end++;
+          }
+          int id = fragmentIds.computeIfAbsent(pattern.substring(col, end), key -> fragmentIds.size());
+          if (id == fragmentUseLists.size()) {
+            fragmentUseLists.add(new ArrayList<>());
+          }
+          fragmentUseLists.get(id).add(p);
+          fragmentUseLists.get(id).add(col);
+          patternFragments[p]++;
+          col = end;
+        }
+      }
+      fragmentLength = new int[fragmentIds.size()];
+      fragmentUses = new int[fragmentIds.size()][];
+      for (Map.Entry<String, Integer> entry : fragmentIds.entrySet()) {
+        fragmentLength[entry.getValue()] = entry.getKey().length();
+        fragmentUses[entry.getValue()] = fragmentUseLists.get(entry.getValue()).stream()
+            .mapToInt(Integer::intValue).toArray();
+      }
+
+      int letters = 1;
+      int maxStates = 1;
+      for (String fragment : fragmentIds.keySet()) {
+        for (byte b : fragment.getBytes(StandardCharsets.US_ASCII)) {
+          if (alphabet[b & 0xFF] == 0) {
+            alphabet[b & 0xFF] = letters++;
+          }
+        }
+        maxStates += fragment.length();
+      }
+      alphabetSize = letters;
+
+      int[] trie = new int[maxStates * alphabetSize];
+      int[] terminalOf = new int[maxStates];
+      Arrays.fill(terminalOf, -1);
+      int states = 1;
+      for (Map.Entry<String, Integer> entry : fragmentIds.entrySet()) {
+        int state = 0;
+        for (byte b : entry.getKey().getBytes(StandardCharsets.US_ASCII)) {
+          int slot = state * alphabetSize + alphabet[b & 0xFF];
+          if (trie[slot] == 0) {
+            trie[slot] = states++;
+          }
+          state = trie[slot];
+        }
+        terminalOf[state] = entry.getValue();
+      }
+
+      transitions = Arrays.copyOf(trie, states * alphabetSize);
+      terminal = Arrays.copyOf(terminalOf, states);
+      outputLink = new int[states];
+      int[] failure = new int[states];
+      int[] queue = new int[states];
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = 0;
+      while (head < tail) {
+        int state = queue[head++];
+        for (int letter = 1; letter < alphabetSize; letter++) {
+          int slot = state * alphabetSize + letter;
+          int child = trie[slot];
+          int fallback = state == 0 ? 0 : transitions[failure[state] * alphabetSize + letter];
+          if (child != 0) {
+            failure[child] = fallback;
+            outputLink[child] = terminal[fallback] >= 0 ? fallback : outputLink[fallback];
+            queue[tail++] = child;
+          } else {
+            transitions[slot] = fallback;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the number of placements of each template, summed over its distinct rotations and reflections.
+     */
+    public long[] count(ByteGrid grid) {
+      int rows = grid.rows();
+      int cols = grid.cols();
+      byte[] cells = grid.cells();
+      long[] counts = new long[sourceCount];
+      int[] rowHits = new int[patternCount * cols];
+      long[] rowMasks = new long[variantCount * cols];
+      long[] progress = new long[variantCount * cols];
+
+      for (int row = 0; row < rows; row++) {
+        Arrays.fill(rowHits, 0);
+        Arrays.fill(rowMasks, 0);
+
+        int state = 0;
+        for (int col = 0; col < cols; col++) {
+          state = transitions[state * alphabetSize + alphabet[cells[row * cols + col] & 0xFF]];
+          for (int hit = terminal[state] >= 0 ? state : outputLink[state]; hit != 0; hit = outputLink[hit]) {
+            int fragment = terminal[hit];
+            int[] uses = fragmentUses[fragment];
+            for (int u = 0; u < uses.length; u += 2) {
+              int pattern = uses[u];
+              int start = col - fragmentLength[fragment] + 1 - uses[u + 1];
+              if (start >= 0 && start + patternWidth[pattern] <= cols) {
+                rowHits[pattern * cols + start]++;
+              }
+            }
+          }
+        }
+
+        for (int pattern = 0; pattern < patternCount; pattern++) {
+          for (int start = 0; start + patternWidth[pattern] <= cols; start++) {
+            if (rowHits[pattern * cols + start] != patternFragments[pattern]) {
+              continue;
+            }
+            for (int use : patternUses[pattern]) {
+              rowMasks[(use / Long.SIZE) * cols + start] |= 1L << (use % Long.SIZE);
+            }
+          }
+        }
+
+        for (int v = 0; v < variantCount; v++) {
+          long complete = 1L << (variantHeight[v] - 1);
+          for (int start = 0; start + variantWidth[v] <= cols; start++) {
+            int slot = v * cols + start;
+            long bits = ((progress[slot] << 1) | 1L) & rowMasks[slot];
+            progress[slot] = bits;
+            if ((bits & complete) != 0) {
+              counts[variantSource[v]]++;
+            }
+          }
+        }
+      }
+      return counts;
+    }
+  }
+
+  public record SearchCounts(long words, long xShapes) {
+  }
+
+  /**
+   * Word search over a grid file that is memory-mapped instead of loaded. The rows are split into bands, and each band
+   * is mapped together with a halo of {@code word length - 1} rows on either side and counted by its own fork-join
+   * task. A word belongs to the band holding its first letter and an X shape to the band holding its centre, so
+   * matches that reach into a neighbouring band are still counted exactly once.
+   */
+  public static class TiledWordSearch {
+
+    private static final long MAX_BAND_BYTES = 1L << 28;
+
+    private final byte[] word;
+    private final int halo;
+
+    public TiledWordSearch(String word) {
+      if (word.isEmpty()) {
+        throw new IllegalArgumentException("Word must not be empty");
+      }
+      this.word = word.getBytes(StandardCharsets.US_ASCII);
+      this.halo = Math.max(1, this.word.length - 1);
+    }
+
+    public SearchCounts count(String filePath) {
+      try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+        long fileSize = channel.size();
+        int cols = firstLineLength(channel, fileSize);
+        if (cols == 0) {
+          return new SearchCounts(0, 0);
+        }
+        int lineBreak = cols < fileSize && readByte(channel, cols) == '\r' ? 2 : 1;
+        long stride = cols + lineBreak;
+        long rows = (fileSize + lineBreak) / stride;
+
+        int parallelism = ForkJoinPool.commonPool().getParallelism() * 4;
+        long bandRows = Math.max(1, Math.min((rows + parallelism - 1) / parallelism,
+            MAX_BAND_BYTES / stride - 2L * halo));
+        GridFile grid = new GridFile(channel, fileSize, rows, cols, stride);
+        int bands = (int) ((rows + bandRows - 1) / bandRows);
+        return ForkJoinPool.commonPool().invoke(new BandTask(grid, bandRows, 0, bands));
+      } catch (IOException e) {
+        e.printStackTrace();
+        return new SearchCounts(0, 0);
+      }
+    }
+
+    private static int firstLineLength(FileChannel channel, long fileSize) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(4096);
+      long position = 0;
+      while (position < fileSize) {
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        for (int i = 0; i < read; i++) {
+          byte b = buffer.get(i);
+          if (b == '\n' || b == '\r') {
+            return Math.toIntExact(position + i);
+          }
+        }
+        position += read;
+      }
+      return Math.toIntExact(fileSize);
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(1);
+      channel.read(buffer, position);
+      return buffer.get(0);
+    }
+
+    private record GridFile(FileChannel channel, long fileSize, long rows, int cols, long stride) {
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private class BandTask extends RecursiveTask<SearchCounts> {
+
+      private final GridFile grid;
+      private final long bandRows;
+      private final int fromBand;
+      private final int toBand;
+
+      BandTask(GridFile grid, long bandRows, int fromBand, int toBand) {
+        this.grid = grid;
+        this.bandRows = bandRows;
+        this.fromBand = fromBand;
+        this.toBand = toBand;
+      }
+
+      @Override
+      protected SearchCounts compute() {
+        if (toBand - fromBand > 1) {
+          int mid = (fromBand + toBand) >>> 1;
+          BandTask left = new BandTask(grid, bandRows, fromBand, mid);
+          left.fork();
+          SearchCounts right = new BandTask(grid, bandRows, mid, toBand).compute();
+          SearchCounts leftCounts = left.join();
+          return new SearchCounts(leftCounts.words() + right.words(), leftCounts.xShapes() + right.xShapes());
+        }
+        if (toBand == fromBand) {
+          return new SearchCounts(0, 0);
+        }
+        try {
+          return countBand(fromBand * bandRows, Math.min(grid.rows(), (fromBand + 1) * bandRows));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      private SearchCounts countBand(long firstRow, long endRow) throws IOException {
+        long firstMapped = Math.max(0, firstRow - halo);
+        long endMapped = Math.min(grid.rows(), endRow + halo);
+        long start = firstMapped * grid.stride();
+        long size = Math.min(grid.fileSize(), endMapped * grid.stride()) - start;
+        MappedByteBuffer band = grid.channel().map(FileChannel.MapMode.READ_ONLY, start, size);
+
+        int cols = grid.cols();
+        long rows = grid.rows();
+        int stride = (int) grid.stride();
+        long words = 0;
+        long xShapes = 0;
+        for (long row = firstRow; row < endRow; row++) {
+          int rowOffset = (int) (row - firstMapped) * stride;
+          for (int col = 0; col < cols; col++) {
+            byte cell = band.get(rowOffset + col);
+            if (cell == word[0]) {
+              words += countWordsFrom(band, rowOffset, row, col, rows, cols, stride);
+            }
+            if (cell == 'A' && row > 0 && row < rows - 1 && col > 0 && col < cols - 1) {
+              byte topLeft = band.get(rowOffset - stride + col - 1);
+              byte topRight = band.get(rowOffset - stride + col + 1);
+              byte bottomLeft = band.get(rowOffset + stride + col - 1);
+              byte bottomRight = band.get(rowOffset + stride + col + 1);
+              if (isMS(topLeft, bottomRight) && isMS(topRight, bottomLeft)) {
+                xShapes++;
+              }
+            }
+          }
+        }
+        return new SearchCounts(words, xShapes);
+      }
+
+      private int countWordsFrom(MappedByteBuffer band, int rowOffset, long row, int col, long rows, int cols,
+          int stride) {
+        int reach = word.length - 1;
+        int count = 0;
+        for (int[] direction : ByteGrid.DIRECTIONS) {
+          long endRow = row + (long) direction[0] * reach;
+          int endCol = col + direction[1] * reach;
+          if (endRow < 0 || endRow >= rows || endCol < 0 || endCol >= cols) {
+            continue;
+          }
+          int step = direction[0] * stride + direction[1];
+          int matched = 1;
+          while (matched < word.length && band.get(rowOffset + col + step * matched) == word[matched]) {
+            matched++;
+          }
+          if (matched == word.length) {
+            count++;
+          }
+        }
+        return count;
+      }
+
+      private boolean isMS(byte first, byte last) {
+        return (first == 'M' && last == 'S') || (first == 'S' && last == 'M');
+      }
+    }
+  }
+
+  /**
+   * Keeps the word and X-MAS counts of a grid current under single-cell edits. A changed cell can only affect the
+   * words that pass through it, at most 8 directions times word length placements, and the X shapes centred in its
+   * 3x3 neighbourhood. Only those are counted before and after the edit, so each update takes constant time.
+   */
+  public static class IncrementalWordSearch {
+
+    private final byte[] cells;
+    private final int rows;
+    private final int cols;
+    private final byte[] word;
+    private long wordCount;
+    private long xShapeCount;
+
+    public IncrementalWordSearch(ByteGrid grid, String word) {
+      this.cells = grid.cells().clone();
+      this.rows = grid.rows();
+      this.cols = grid.cols();
+      this.word = word.getBytes(StandardCharsets.US_ASCII);
+      WordSearchProcessor processor = new WordSearchProcessor();
+      this.wordCount = processor.countWord(grid, this.word);
+      this.xShapeCount = processor.calculateXShapeOccurrences(grid);
+    }
+
+    public void setCell(int row, int col, char ch) {
+      if (row < 0 || row >= rows || col < 0 || col >= cols) {
+        throw new IndexOutOfBoundsException("Cell " + row + "," + col + " is outside the grid");
+      }
+      int index = row * cols + col;
+      if (cells[index] == (byte) ch) {
+        return;
+      }
+      wordCount -= countWordsThrough(row, col);
+      xShapeCount -= countXShapesAround(row, col);
+      cells[index] = (byte) ch;
+      wordCount += countWordsThrough(row, col);
+      xShapeCount += countXShapesAround(row, col);
+    }
+
+    public long getWordCount() {
+      return wordCount;
+    }
+
+    public long getXShapeCount() {
+      return xShapeCount;
+    }
+
+    public byte getCell(int row, int col) {
+      return cells[row * cols + col];
+    }
+
+    private int countWordsThrough(int row, int col) {
+      int count = 0;
+      for (int[] direction : ByteGrid.DIRECTIONS) {
+        for (int k = 0; k < word.length; k++) {
+          if (matchesFrom(row - direction[0] * k, col - direction[1] * k, direction)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+
+    private boolean matchesFrom(int startRow, int startCol, int[] direction) {
+      int reach = word.length - 1;
+      int endRow = startRow + direction[0] * reach;
+      int endCol = startCol + direction[1] * reach;
+      if (!contains(startRow, startCol) || !contains(endRow, endCol)) {
+        return false;
+      }
+      for (int k = 0; k < word.length; k++) {
+        if (cells[(startRow + direction[0] * k) * cols + startCol + direction[1] * k] != word[k]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int countXShapesAround(int row, int col) {
+      int count = 0;
+      for (int centreRow = Math.max(1, row - 1); centreRow <= Math.min(rows - 2, row + 1); centreRow++) {
+        for (int centreCol = Math.max(1, col - 1); centreCol <= Math.min(cols - 2, col + 1); centreCol++) {
+          if (isXShape(centreRow, centreCol)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+
+    private boolean isXShape(int row, int col) {
+      if (cells[row * cols + col] != 'A') {
+        return false;
+      }
+      byte topLeft = cells[(row - 1) * cols + col - 1];
+      byte topRight = cells[(row - 1) * cols + col + 1];
+      byte bottomLeft = cells[(row + 1) * cols + col - 1];
+      byte bottomRight = cells[(row + 1) * cols + col + 1];
+      return isMS(topLeft, bottomRight) && isMS(topRight, bottomLeft);
+    }
+
+    private static boolean isMS(byte first, byte last) {
+      return (first == 'M' && last == 'S') || (first == 'S' && last == 'M');
+    }
+
+    private boolean contains(int row, int col) {
+      return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+  }
+
+  /**
+   * One bitplane per letter of XMAS, with every row packed into {@code words()} longs. Bit {@code j} of word
+   * {@code w} in a row stands for column {@code 64 * w + j}.
+   */
+  public static class LetterBitboard {
+
+    private static final String LETTERS = "XMAS";
+
+    private final int words;
+    private final long[][] planes = new long[LETTERS.length()][];
+
+    public LetterBitboard(ByteGrid grid) {
+      words = (grid.cols() + Long.SIZE - 1) / Long.SIZE;
+      for (int letter = 0; letter < planes.length; letter++) {
+        planes[letter] = new long[grid.rows() * words];
+      }
+      byte[] cells = grid.cells();
+      for (int row = 0; row < grid.rows(); row++) {
+        for (int col = 0; col < grid.cols(); col++) {
+          int letter = LETTERS.indexOf(cells[row * grid.cols() + col]);
+          if (letter >= 0) {
+            planes[letter][row * words + col / Long.SIZE] |= 1L << (col % Long.SIZE);
+          }
+        }
+      }
+    }
+
+    public int words() {
+      return words;
+    }
+
+    public long[] plane(char letter) {
+      return planes[LETTERS.indexOf(letter)];
+    }
+
+    // bit j holds column j - 1 of the row starting at rowOffset
+    static long fromLeft(long[] plane, int rowOffset, int w) {
+      long carry = w > 0 ? plane[rowOffset + w - 1] >>> (Long.SIZE - 1) : 0;
+      return (plane[rowOffset + w] << 1) | carry;
+    }
+
+    // bit j holds column j + 1 of the row starting at rowOffset
+    static long fromRight(long[] plane, int rowOffset, int w, int words) {
+      long carry = w < words - 1 ? plane[rowOffset + w + 1] << (Long.SIZE - 1) : 0;
+      return (plane[rowOffset + w] >>> 1) | carry;
+    }
+  }
+
+  /**
+   * Row-major grid of letters stored in a single {@code byte[]}.
+   */
+  public static class ByteGrid {
+
+    static final int[][] DIRECTIONS = {
+        {0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {-1, -1}, {1, -1}, {-1, 1}
+    };
+
+    private final byte[] cells;
+    private final int rows;
+    private final int cols;
+
+    public ByteGrid(byte[] cells, int rows, int cols) {
+      this.cells = cells;
+      this.rows = rows;
+      this.cols = cols;
+    }
+
+    public static ByteGrid of(List<String> lines) {
+      int rows = lines.size();
+      int cols = rows == 0 ? 0 : lines.get(0).length();
+      byte[] cells = new byte[rows * cols];
+      for (int row = 0; row < rows; row++) {
+        byte[] line = lines.get(row).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(line, 0, cells, row * cols, Math.min(cols, line.length));
+      }
+      return new ByteGrid(cells, rows, cols);
+    }
+
+    public byte[] cells() {
+      return cells;
+    }
+
+    public int rows() {
+      return rows;
+    }
+
+    public int cols() {
+      return cols;
+    }
+
+    public byte get(int row, int col) {
+      return cells[row * cols + col];
+    }
+  }
 }
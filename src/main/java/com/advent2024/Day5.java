@@ -7,11 +7,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * --- Day 5: Print Queue ---
@@ -106,17 +106,22 @@ public class Day5 {
     String filePath = "src/main/resources/input_day5.txt";
     PrintQueueProcessor printQueueProcessor = new PrintQueueProcessor();
     printQueueProcessor.readInput(filePath);
-    long total = printQueueProcessor.calculateTotal();
-    System.out.println("Total: " + total);
-    long reorderedMiddleSum = printQueueProcessor.calculateReorderedMiddleSum();
-    System.out.println("Reordered middle sum: " + reorderedMiddleSum);
+    MiddleSums middleSums = printQueueProcessor.calculateMiddleSums();
+    System.out.println("Total: " + middleSums.correct());
+    System.out.println("Reordered middle sum: " + middleSums.reordered());
+    if (middleSums.cyclic() > 0) {
+      System.out.println("Skipped " + middleSums.cyclic() + " updates whose rules contain a cycle:");
+      for (int[] update : printQueueProcessor.findUpdatesWithRuleCycles()) {
+        System.out.println(Arrays.toString(update));
+      }
+    }
   }
 
   public static class PrintQueueProcessor {
     private List<int[]> rules = new ArrayList<>();
     private List<int[]> updates = new ArrayList<>();
-    private Map<Integer, List<Integer>> graph;
-    private Map<Integer, Integer> inDegree;
+    private RuleIndex ruleIndex;
+    private RuleGraphAnalyzer ruleGraph;
 
     public void readInput(String filePath) {
       try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
@@ -138,128 +143,747 @@ public class Day5 {
       } catch (IOException e) {
         e.printStackTrace();
       }
+      ruleIndex = null;
+      ruleGraph = null;
     }
 
     public long calculateTotal() {
+      RuleIndex index = getRuleIndex();
       long total = 0;
       for (int[] update : updates) {
-        if (isCorrectOrder(update)) {
-          int middleIndex = update.length / 2;
-          total += update.length % 2 == 0 ? update[middleIndex - 1] : update[middleIndex];
+        if (index.isCorrectOrder(update)) {
+          total += middlePage(update);
         }
       }
       return total;
     }
 
-    private boolean isCorrectOrder(int[] update) {
-      buildGraph(update);
+    public long calculateReorderedMiddleSum() {
+      return calculateMiddleSums().reordered();
+    }
+
+    /**
+     * Middle-page sums of the correctly ordered and of the fixed updates, computed in one pass without reordering
+     * anything; see {@link RuleIndex#accumulate(int[], MiddleSums)}. Updates whose rules contain a cycle are only
+     * counted, and {@link #findUpdatesWithRuleCycles()} lists them.
+     */
+    public MiddleSums calculateMiddleSums() {
+      RuleIndex index = getRuleIndex();
+      MiddleSums sums = new MiddleSums();
+      for (int[] update : updates) {
+        index.accumulate(update, sums);
+      }
+      return sums;
+    }
+
+    public MiddleSums calculateMiddleSumsInParallel() {
+      return new ParallelUpdateValidator(getRuleIndex()).validate(updates);
+    }
 
-      Queue<Integer> queue = new LinkedList<>();
-      for (int node : update) {
-        if (!inDegree.containsKey(node) || inDegree.get(node) == 0) {
-          queue.offer(node);
+    /**
+     * Updates whose pages are ordered by a cycle of rules, which have no correct order to restore.
+     */
+    public List<int[]> findUpdatesWithRuleCycles() {
+      RuleGraphAnalyzer graph = getRuleGraph();
+      List<int[]> cyclic = new ArrayList<>();
+      for (int[] update : updates) {
+        if (graph.hasCycleWithin(update)) {
+          cyclic.add(update);
         }
       }
+      return cyclic;
+    }
 
-      int index = 0;
-      while (!queue.isEmpty()) {
-        int current = queue.poll();
+    public RuleGraphAnalyzer getRuleGraph() {
+      if (ruleGraph == null) {
+        ruleGraph = new RuleGraphAnalyzer(rules, getRuleIndex());
+      }
+      return ruleGraph;
+    }
 
-        // Check if current matches the current index in the original update sequence
-        if (index >= update.length || update[index++] != current) {
-          return false;
+    private RuleIndex getRuleIndex() {
+      if (ruleIndex == null) {
+        ruleIndex = new RuleIndex(rules);
+      }
+      return ruleIndex;
+    }
+
+    static int middlePage(int[] update) {
+      return middlePage(update, update.length);
+    }
+
+    static int middlePage(int[] pages, int length) {
+      int middleIndex = length / 2;
+      return length % 2 == 0 ? pages[middleIndex - 1] : pages[middleIndex];
+    }
+  }
+
+  public static class MiddleSums {
+    private long correct;
+    private long reordered;
+    private long cyclic;
+
+    public long correct() {
+      return correct;
+    }
+
+    public long reordered() {
+      return reordered;
+    }
+
+    public long cyclic() {
+      return cyclic;
+    }
+
+    MiddleSums add(MiddleSums other) {
+      correct += other.correct;
+      reordered += other.reordered;
+      cyclic += other.cyclic;
+      return this;
+    }
+  }
+
+  /**
+   * Validates a batch of updates on the fork-join pool. The compiled {@link RuleIndex} is never written after
+   * construction, so all tasks share it; each leaf accumulates into its own {@link MiddleSums}, and the partial sums
+   * are added together on the way back up.
+   */
+  public static class ParallelUpdateValidator {
+
+    private static final int LEAF_SIZE = 1 << 10;
+
+    private final RuleIndex ruleIndex;
+
+    public ParallelUpdateValidator(RuleIndex ruleIndex) {
+      this.ruleIndex = ruleIndex;
+    }
+
+    public MiddleSums validate(List<int[]> updates) {
+      return ForkJoinPool.commonPool().invoke(new ValidationTask(updates, 0, updates.size()));
+    }
+
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private class ValidationTask extends RecursiveTask<MiddleSums> {
+
+      private final List<int[]> updates;
+      private final int from;
+      private final int to;
+
+      ValidationTask(List<int[]> updates, int from, int to) {
+        this.updates = updates;
+        this.from = from;
+        this.to = to;
+      }
+
+      @Override
+      protected MiddleSums compute() {
+        if (to - from > LEAF_SIZE) {
+          int mid = (from + to) >>> 1;
+          ValidationTask left = new ValidationTask(updates, from, mid);
+          left.fork();
+          MiddleSums right = new ValidationTask(updates, mid, to).compute();
+          return left.join().add(right);
+        }
+        MiddleSums sums = new MiddleSums();
+        for (int i = from; i < to; i++) {
+          ruleIndex.accumulate(updates.get(i), sums);
         }
+        return sums;
+      }
+    }
+  }
 
-        for (int neighbor : graph.getOrDefault(current, new ArrayList<>())) {
-          int degree = inDegree.get(neighbor) - 1;
-          inDegree.put(neighbor, degree);
-          if (degree == 0) {
-            queue.offer(neighbor);
+  /**
+   * Precedence relation between pages, together with the checks the print queue needs on top of it.
+   */
+  public interface PageOrder {
+
+    /**
+     * Whether a rule says {@code before} has to be printed before {@code after}.
+     */
+    boolean mustPrecede(int before, int after);
+
+    /**
+     * Whether no page comes after a page it must precede. A page that must precede itself can never be placed, so,
+     * as in {@link RuleGraphAnalyzer}, it makes the update a cycle rather than correctly ordered.
+     */
+    default boolean isCorrectOrder(int[] update) {
+      for (int i = 0; i < update.length; i++) {
+        for (int j = i; j < update.length; j++) {
+          if (mustPrecede(update[j], update[i])) {
+            return false;
           }
         }
       }
+      return true;
+    }
 
-      // If all nodes are processed and matched the update, it means order is correct
-      return index == update.length;
+    /**
+     * Whether the rules between the pages of {@code update} admit an order at all, checked by repeatedly placing a
+     * page none of the remaining pages must precede.
+     */
+    default boolean isAcyclicWithin(int[] update) {
+      int length = update.length;
+      int[] predecessors = new int[length];
+      boolean[] placed = new boolean[length];
+      for (int i = 0; i < length; i++) {
+        for (int j = 0; j < length; j++) {
+          if (mustPrecede(update[j], update[i])) {
+            predecessors[i]++;
+          }
+        }
+      }
+      for (int round = 0; round < length; round++) {
+        int next = -1;
+        for (int i = 0; i < length && next < 0; i++) {
+          if (!placed[i] && predecessors[i] == 0) {
+            next = i;
+          }
+        }
+        if (next < 0) {
+          return false;
+        }
+        placed[next] = true;
+        for (int i = 0; i < length; i++) {
+          if (mustPrecede(update[next], update[i])) {
+            predecessors[i]--;
+          }
+        }
+      }
+      return true;
     }
 
-    private void buildGraph(int[] update) {
-      graph = new HashMap<>();
-      inDegree = new HashMap<>();
+    /**
+     * Adds the middle page of {@code update} to {@code sums}: to the correct sum when the update is already in order,
+     * and to the reordered sum otherwise. A mis-ordered update is not reordered when the rules between its pages fix a
+     * single order: their transitive closure is then a chain, and the page at position {@code m} is the one with
+     * exactly {@code m} pages of the update before it in the closure. That holds whenever every pair of pages has a
+     * rule, as the puzzle guarantees. Updates with more than 64 pages, or whose rules allow several orders, are
+     * ordered by {@link #orderedIndex} instead. Updates whose rules contain a cycle have no order; they add no page
+     * and are counted in {@link MiddleSums#cyclic()}.
+     */
+    default void accumulate(int[] update, MiddleSums sums) {
+      int length = update.length;
+      if (length == 0) {
+        return;
+      }
+      if (isCorrectOrder(update)) {
+        sums.correct += PrintQueueProcessor.middlePage(update);
+        return;
+      }
+      int middleIndex = length % 2 == 0 ? length / 2 - 1 : length / 2;
+      int middle = length <= Long.SIZE ? closureIndex(update, middleIndex) : orderedIndex(update, middleIndex);
+      if (middle >= 0) {
+        sums.reordered += update[middle];
+      } else {
+        sums.cyclic++;
+      }
+    }
 
-      Set<Integer> updateSet = new HashSet<>();
-      for (int page : update) {
-        updateSet.add(page);
+    /**
+     * Index of the page at {@code position} once {@code update} is ordered, read off the transitive closure of the
+     * rules between its pages, kept as one bit mask of predecessors per page. Returns -1 for a cycle, including a page
+     * that must precede itself, and falls back to {@link #orderedIndex} when the closure is not a chain, i.e. when two
+     * pages have the same number of predecessors.
+     */
+    private int closureIndex(int[] update, int position) {
+      int length = update.length;
+      long[] predecessors = new long[length];
+      for (int i = 0; i < length; i++) {
+        for (int j = 0; j < length; j++) {
+          if (mustPrecede(update[j], update[i])) {
+            predecessors[i] |= 1L << j;
+          }
+        }
       }
+      for (int via = 0; via < length; via++) {
+        for (int i = 0; i < length; i++) {
+          if ((predecessors[i] >>> via & 1) != 0) {
+            predecessors[i] |= predecessors[via];
+          }
+        }
+      }
+      long counts = 0;
+      int found = -1;
+      for (int i = 0; i < length; i++) {
+        if ((predecessors[i] >>> i & 1) != 0) {
+          return -1;
+        }
+        int count = Long.bitCount(predecessors[i]);
+        if ((counts >>> count & 1) != 0) {
+          return orderedIndex(update, position);
+        }
+        counts |= 1L << count;
+        if (count == position) {
+          found = i;
+        }
+      }
+      return found;
+    }
+
+    /**
+     * Index of the page at {@code position} in the order Kahn's algorithm gives {@code update}: pages are placed once
+     * none of the remaining pages must precede them, ties going to the page that comes first in the update. Returns
+     * -1 when a cycle leaves pages that can never be placed.
+     */
+    private int orderedIndex(int[] update, int position) {
+      int length = update.length;
+      int[] predecessors = new int[length];
+      for (int i = 0; i < length; i++) {
+        for (int j = 0; j < length; j++) {
+          if (mustPrecede(update[j], update[i])) {
+            predecessors[i]++;
+          }
+        }
+      }
+      int[] queue = new int[length];
+      int head = 0;
+      int tail = 0;
+      for (int i = 0; i < length; i++) {
+        if (predecessors[i] == 0) {
+          queue[tail++] = i;
+        }
+      }
+      int found = -1;
+      for (int placed = 0; head < tail; placed++) {
+        int next = queue[head++];
+        if (placed == position) {
+          found = next;
+        }
+        for (int i = 0; i < length; i++) {
+          if (i != next && mustPrecede(update[next], update[i]) && --predecessors[i] == 0) {
+            queue[tail++] = i;
+          }
+        }
+      }
+      return tail == length ? found : -1;
+    }
+  }
+
+  /**
+   * Keeps both middle-page sums current while rules are added and removed. Every page maps to the updates that contain
+   * it, and each update remembers what it last contributed. A rule {@code x|y} can only change the outcome of updates
+   * that contain both pages, so only those are re-checked when it changes.
+   */
+  public static final class LiveRuleEngine implements PageOrder {
 
+    private final Set<Long> rules = new HashSet<>();
+    private final List<int[]> updates;
+    private final Map<Integer, List<Integer>> updatesByPage = new HashMap<>();
+    private final long[] correctContributions;
+    private final long[] reorderedContributions;
+    private long correctSum;
+    private long reorderedSum;
+
+    public LiveRuleEngine(List<int[]> rules, List<int[]> updates) {
       for (int[] rule : rules) {
-        int start = rule[0];
-        int end = rule[1];
+        this.rules.add(ruleKey(rule[0], rule[1]));
+      }
+      this.updates = List.copyOf(updates);
+      correctContributions = new long[updates.size()];
+      reorderedContributions = new long[updates.size()];
+      for (int u = 0; u < this.updates.size(); u++) {
+        for (int page : Arrays.stream(this.updates.get(u)).distinct().toArray()) {
+          updatesByPage.computeIfAbsent(page, k -> new ArrayList<>()).add(u);
+        }
+        recheck(u);
+      }
+    }
+
+    public void addRule(int before, int after) {
+      if (rules.add(ruleKey(before, after))) {
+        recheckUpdatesWith(before, after);
+      }
+    }
 
-        if (updateSet.contains(start) && updateSet.contains(end)) {
-          graph.computeIfAbsent(start, k -> new ArrayList<>()).add(end);
-          inDegree.put(end, inDegree.getOrDefault(end, 0) + 1);
-          inDegree.putIfAbsent(start, 0);
+    public void removeRule(int before, int after) {
+      if (rules.remove(ruleKey(before, after))) {
+        recheckUpdatesWith(before, after);
+      }
+    }
+
+    @Override
+    public boolean mustPrecede(int before, int after) {
+      return rules.contains(ruleKey(before, after));
+    }
+
+    public long getCorrectSum() {
+      return correctSum;
+    }
+
+    public long getReorderedSum() {
+      return reorderedSum;
+    }
+
+    private void recheckUpdatesWith(int first, int second) {
+      List<Integer> withFirst = updatesByPage.getOrDefault(first, List.of());
+      List<Integer> withSecond = updatesByPage.getOrDefault(second, List.of());
+      boolean firstIsSmaller = withFirst.size() <= withSecond.size();
+      List<Integer> candidates = firstIsSmaller ? withFirst : withSecond;
+      int otherPage = firstIsSmaller ? second : first;
+      for (int u : candidates) {
+        if (contains(updates.get(u), otherPage)) {
+          recheck(u);
         }
       }
     }
 
-    public long calculateReorderedMiddleSum() {
-      long total = 0;
+    private void recheck(int u) {
+      MiddleSums sums = new MiddleSums();
+      accumulate(updates.get(u), sums);
+      correctSum += sums.correct() - correctContributions[u];
+      reorderedSum += sums.reordered() - reorderedContributions[u];
+      correctContributions[u] = sums.correct();
+      reorderedContributions[u] = sums.reordered();
+    }
 
-      for (int[] update : updates) {
-        if (!isCorrectOrder(update)) {
-          int [] reorderedUpdate = correctlyOrderUpdate(update);
-          int middleIndex = reorderedUpdate.length / 2;
-          total += reorderedUpdate.length % 2 == 0 ? reorderedUpdate[middleIndex - 1] : reorderedUpdate[middleIndex];
+    private static boolean contains(int[] update, int page) {
+      for (int p : update) {
+        if (p == page) {
+          return true;
         }
       }
-      return total;
+      return false;
     }
 
-    private int[] correctlyOrderUpdate(int[] update) {
-      Map<Integer, List<Integer>> graph = new HashMap<>();
-      Map<Integer, Integer> inDegree = new HashMap<>();
+    private static long ruleKey(int before, int after) {
+      return ((long) before << Integer.SIZE) | (after & 0xFFFFFFFFL);
+    }
+  }
+
+  /**
+   * Whole-graph view of the ordering rules. Tarjan's algorithm runs once over all rules to find the strongly connected
+   * components; any component with more than one page, or a page with a rule to itself, is a cycle. The condensation
+   * is a DAG, and its transitive closure is cached as one bitset row per component, so whether one page has to come
+   * before another, directly or through a chain of rules, is a single bit test. The closure takes one bit per pair of
+   * components, so above {@link #CLOSURE_COMPONENT_LIMIT} components it is not built and only the cycle queries are
+   * available. The analyzer is immutable and can be reused across batches.
+   */
+  public static class RuleGraphAnalyzer {
 
-      Set<Integer> updateSet = new HashSet<>();
-      for (int page : update) {
-        updateSet.add(page);
+    private static final int CLOSURE_COMPONENT_LIMIT = 1 << 14;
+
+    private final RuleIndex directRules;
+    private final Map<Integer, Integer> pageIds = new HashMap<>();
+    private final int[] pages;
+    private final int[] component;
+    private final boolean[] cyclicComponent;
+    private final int componentCount;
+    private final int words;
+    private final long[] reachable;
+
+    public RuleGraphAnalyzer(List<int[]> rules, RuleIndex directRules) {
+      this.directRules = directRules;
+      for (int[] rule : rules) {
+        pageIds.putIfAbsent(rule[0], pageIds.size());
+        pageIds.putIfAbsent(rule[1], pageIds.size());
       }
+      int n = pageIds.size();
+      pages = new int[n];
+      pageIds.forEach((page, id) -> pages[id] = page);
 
+      int[] degree = new int[n];
+      for (int[] rule : rules) {
+        degree[pageIds.get(rule[0])]++;
+      }
+      int[][] successors = new int[n][];
+      for (int v = 0; v < n; v++) {
+        successors[v] = new int[degree[v]];
+      }
+      boolean[] selfLoop = new boolean[n];
+      Arrays.fill(degree, 0);
       for (int[] rule : rules) {
-        int start = rule[0];
-        int end = rule[1];
+        int from = pageIds.get(rule[0]);
+        int to = pageIds.get(rule[1]);
+        successors[from][degree[from]++] = to;
+        selfLoop[from] |= from == to;
+      }
 
-        if (updateSet.contains(start) && updateSet.contains(end)) {
-          graph.computeIfAbsent(start, k -> new ArrayList<>()).add(end);
-          inDegree.put(end, inDegree.getOrDefault(end, 0) + 1);
-          inDegree.putIfAbsent(start, 0);
+      component = new int[n];
+      componentCount = tarjan(successors);
+      int[] componentSize = new int[componentCount];
+      cyclicComponent = new boolean[componentCount];
+      for (int v = 0; v < n; v++) {
+        componentSize[component[v]]++;
+        cyclicComponent[component[v]] |= selfLoop[v];
+      }
+      for (int c = 0; c < componentCount; c++) {
+        cyclicComponent[c] |= componentSize[c] > 1;
+      }
+
+      // Tarjan numbers components in reverse topological order, so successors are always finished first
+      words = (componentCount + Long.SIZE - 1) / Long.SIZE;
+      if (componentCount > CLOSURE_COMPONENT_LIMIT) {
+        reachable = null;
+        return;
+      }
+      reachable = new long[componentCount * words];
+      int[][] members = new int[componentCount][];
+      for (int c = 0; c < componentCount; c++) {
+        members[c] = new int[componentSize[c]];
+      }
+      Arrays.fill(componentSize, 0);
+      for (int v = 0; v < n; v++) {
+        members[component[v]][componentSize[component[v]]++] = v;
+      }
+      for (int c = 0; c < componentCount; c++) {
+        int row = c * words;
+        if (cyclicComponent[c]) {
+          reachable[row + c / Long.SIZE] |= 1L << (c % Long.SIZE);
+        }
+        for (int v : members[c]) {
+          for (int w : successors[v]) {
+            int d = component[w];
+            if (d == c) {
+              continue;
+            }
+            reachable[row + d / Long.SIZE] |= 1L << (d % Long.SIZE);
+            for (int i = 0; i < words; i++) {
+              reachable[row + i] |= reachable[d * words + i];
+            }
+          }
         }
       }
+    }
 
-      List<Integer> order = new ArrayList<>();
-      Queue<Integer> queue = new LinkedList<>();
+    // iterative Tarjan; fills component[] and returns the number of components
+    private int tarjan(int[][] successors) {
+      int n = successors.length;
+      int[] index = new int[n];
+      int[] lowLink = new int[n];
+      int[] edgeCursor = new int[n];
+      boolean[] onStack = new boolean[n];
+      int[] stack = new int[n];
+      int[] callStack = new int[n];
+      Arrays.fill(index, -1);
+      int stackSize = 0;
+      int nextIndex = 0;
+      int components = 0;
 
-      for (int node : update) {
-        if (!inDegree.containsKey(node) || inDegree.get(node) == 0) {
-          queue.offer(node);
+      for (int root = 0; root < n; root++) {
+        if (index[root] >= 0) {
+          continue;
+        }
+        int depth = 0;
+        callStack[depth++] = root;
+        index[root] = lowLink[root] = nextIndex++;
+        stack[stackSize++] = root;
+        onStack[root] = true;
+
+        while (depth > 0) {
+          int v = callStack[depth - 1];
+          if (edgeCursor[v] < successors[v].length) {
+            int w = successors[v][edgeCursor[v]++];
+            if (index[w] < 0) {
+              index[w] = lowLink[w] = nextIndex++;
+              stack[stackSize++] = w;
+              onStack[w] = true;
+              callStack[depth++] = w;
+            } else if (onStack[w]) {
+              lowLink[v] = Math.min(lowLink[v], index[w]);
+            }
+            continue;
+          }
+          depth--;
+          if (depth > 0) {
+            int parent = callStack[depth - 1];
+            lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+          }
+          if (lowLink[v] == index[v]) {
+            int w;
+            do {
+              w = stack[--stackSize];
+              onStack[w] = false;
+              component[w] = components;
+            } while (w != v);
+            components++;
+          }
         }
       }
+      return components;
+    }
+
+    public boolean isAcyclic() {
+      for (boolean cyclic : cyclicComponent) {
+        if (cyclic) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * The pages of every cycle in the rules, one list per strongly connected component.
+     */
+    public List<List<Integer>> findCycles() {
+      List<List<Integer>> cycles = new ArrayList<>();
+      Map<Integer, List<Integer>> byComponent = new HashMap<>();
+      for (int v = 0; v < pages.length; v++) {
+        if (cyclicComponent[component[v]]) {
+          byComponent.computeIfAbsent(component[v], k -> new ArrayList<>()).add(pages[v]);
+        }
+      }
+      cycles.addAll(byComponent.values());
+      return cycles;
+    }
+
+    /**
+     * Whether a chain of one or more rules leads from {@code before} to {@code after}. The chain may pass through
+     * pages outside any given update, so this answers questions about the whole rule set; the order within one update
+     * only follows the rules between its own pages.
+     */
+    public boolean reaches(int before, int after) {
+      if (reachable == null) {
+        throw new IllegalStateException("No closure kept for " + componentCount + " components; the limit is "
+            + CLOSURE_COMPONENT_LIMIT);
+      }
+      Integer from = pageIds.get(before);
+      Integer to = pageIds.get(after);
+      if (from == null || to == null) {
+        return false;
+      }
+      int d = component[to];
+      return (reachable[component[from] * words + d / Long.SIZE] & (1L << (d % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Whether {@code before} has to come before {@code after} in every order that respects the rules. Pages on a
+     * common cycle reach each other and are not ordered.
+     */
+    public boolean precedes(int before, int after) {
+      return reaches(before, after) && !reaches(after, before);
+    }
+
+    /**
+     * Whether the rules between the pages of {@code update} contain a cycle. Pages of such a cycle must share a
+     * cyclic component of the whole graph, so the exact check on the update's own rules only runs when two of its
+     * pages do.
+     */
+    public boolean hasCycleWithin(int[] update) {
+      boolean shared = false;
+      for (int i = 0; i < update.length && !shared; i++) {
+        Integer id = pageIds.get(update[i]);
+        if (id == null || !cyclicComponent[component[id]]) {
+          continue;
+        }
+        for (int j = i + 1; j < update.length && !shared; j++) {
+          Integer other = pageIds.get(update[j]);
+          shared = other != null && component[other] == component[id];
+        }
+        shared |= directRules.mustPrecede(update[i], update[i]);
+      }
+      return shared && !directRules.isAcyclicWithin(update);
+    }
+  }
 
-      while (!queue.isEmpty()) {
-        int current = queue.poll();
-        order.add(current);
+  /**
+   * Page ordering rules compiled once into a precedence bit matrix: bit {@code (i, j)} is set when page {@code i} must
+   * be printed before page {@code j}. Page numbers below {@link #DENSE_LIMIT} index the matrix directly; otherwise
+   * the pages named in the rules are first mapped to dense indexes through an open-addressing table. With more than
+   * {@link #MATRIX_PAGE_LIMIT} distinct pages the matrix would be quadratic in the page count, so the set bit positions
+   * are kept in a second open-addressing table instead. Lookups allocate nothing, so checking an update of {@code k}
+   * pages is an O(k^2) pass of bit tests.
+   */
+  public static class RuleIndex implements PageOrder {
 
-        for (int neighbor : graph.getOrDefault(current, new ArrayList<>())) {
-          int degree = inDegree.get(neighbor) - 1;
-          inDegree.put(neighbor, degree);
-          if (degree == 0) {
-            queue.offer(neighbor);
+    private static final int DENSE_LIMIT = 1 << 12;
+    private static final int MATRIX_PAGE_LIMIT = 1 << 14;
+
+    private final int[] pageKeys;
+    private final int[] pageValues;
+    private final int size;
+    private final long[] matrix;
+    private final long[] ruleBits;
+
+    public RuleIndex(List<int[]> rules) {
+      int maxPage = 0;
+      boolean dense = true;
+      for (int[] rule : rules) {
+        for (int page : rule) {
+          dense &= page >= 0 && page < DENSE_LIMIT;
+          maxPage = Math.max(maxPage, page);
+        }
+      }
+
+      if (dense) {
+        pageKeys = null;
+        pageValues = null;
+        size = maxPage + 1;
+      } else {
+        int capacity = Integer.highestOneBit(Math.max(2, rules.size() * 4) - 1) << 1;
+        pageKeys = new int[capacity];
+        pageValues = new int[capacity];
+        Arrays.fill(pageValues, -1);
+        int next = 0;
+        for (int[] rule : rules) {
+          for (int page : rule) {
+            int slot = slotOf(page);
+            if (pageValues[slot] < 0) {
+              pageKeys[slot] = page;
+              pageValues[slot] = next++;
+            }
           }
         }
+        size = next;
+      }
+
+      if (size <= MATRIX_PAGE_LIMIT) {
+        matrix = new long[(int) (((long) size * size + Long.SIZE - 1) / Long.SIZE)];
+        ruleBits = null;
+        for (int[] rule : rules) {
+          long bit = (long) indexOf(rule[0]) * size + indexOf(rule[1]);
+          matrix[(int) (bit / Long.SIZE)] |= 1L << (bit % Long.SIZE);
+        }
+      } else {
+        matrix = null;
+        ruleBits = new long[Integer.highestOneBit(Math.max(2, rules.size() * 2) - 1) << 1];
+        Arrays.fill(ruleBits, -1);
+        for (int[] rule : rules) {
+          long bit = (long) indexOf(rule[0]) * size + indexOf(rule[1]);
+          ruleBits[bitSlotOf(bit)] = bit;
+        }
+      }
+    }
+
+    @Override
+    public boolean mustPrecede(int before, int after) {
+      int from = indexOf(before);
+      int to = indexOf(after);
+      if (from < 0 || to < 0) {
+        return false;
+      }
+      long bit = (long) from * size + to;
+      if (matrix == null) {
+        return ruleBits[bitSlotOf(bit)] == bit;
       }
+      return (matrix[(int) (bit / Long.SIZE)] & (1L << (bit % Long.SIZE))) != 0;
+    }
 
-      return order.stream().mapToInt(i -> i).toArray();
+    private int indexOf(int page) {
+      if (pageKeys == null) {
+        return page >= 0 && page < size ? page : -1;
+      }
+      return pageValues[slotOf(page)];
+    }
+
+    private int slotOf(int page) {
+      int mask = pageKeys.length - 1;
+      int h = page * 0x9E3779B9;
+      int slot = (h ^ (h >>> 16)) & mask;
+      while (pageValues[slot] >= 0 && pageKeys[slot] != page) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private int bitSlotOf(long bit) {
+      int mask = ruleBits.length - 1;
+      long h = bit * 0x9E3779B97F4A7C15L;
+      int slot = (int) (h ^ (h >>> 32)) & mask;
+      while (ruleBits[slot] >= 0 && ruleBits[slot] != bit) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
     }
   }
 }
@@ -229,7 +229,8 @@ public class Day6 {
       private final char[][] grid;
       private final int height;
       private final int width;
-      private Set<Position> visited;
+      private final boolean[] visited;
+      private int visitedCount;
       private Position guardPosition;
       private Direction direction;
 
@@ -237,7 +238,7 @@ public class Day6 {
         height = gridLines.size();
         width = height > 0 ? gridLines.get(0).length() : 0;
         grid = new char[height][width];
-        visited = new HashSet<>(width * height);
+        visited = new boolean[width * height];
         for (int i = 0; i < height; i++) {
           grid[i] = gridLines.get(i).toCharArray();
         }
@@ -256,43 +257,39 @@ public class Day6 {
         throw new IllegalStateException("Guard not found");
       }
 
-      private boolean isValidPosition(int x, int y) {
-        return x >= 0 && x < width && y >= 0 && y < height;
-      }
-
-      private boolean isObstacle(int x, int y) {
-        return isValidPosition(x, y) && grid[y][x] == '#';
-      }
-
+      /**
+       * Walks the patrol one straight segment at a time using the {@link JumpTable}, marking the cells of each segment
+       * as visited.
+       */
       public int simulate() {
-//        visited.clear();
-        visited.add(guardPosition);
-//        int steps = 0;
-//        int maxSteps = width * height * 4;
+        JumpTable jumps = new JumpTable(grid);
+        int cell = jumps.cellOf(guardPosition.x, guardPosition.y);
+        int dir = direction.ordinal();
+        markVisited(cell);
 
         while (true) {
-//          steps++;
-          int nextX = guardPosition.x + direction.x;
-          int nextY = guardPosition.y + direction.y;
-
-          if (!isValidPosition(nextX, nextY)) {
+          int target = jumps.next(cell, dir);
+          int end = JumpTable.stopCell(target);
+          int step = jumps.step(dir);
+          while (cell != end) {
+            cell += step;
+            markVisited(cell);
+          }
+          if (JumpTable.exits(target)) {
             break;
           }
+          dir = (dir + 1) % JumpTable.DIRECTIONS.length;
+        }
+        guardPosition = new Position(cell % width, cell / width);
+        direction = JumpTable.DIRECTIONS[dir];
+        return visitedCount;
+      }
 
-          if (isObstacle(nextX, nextY)) {
-            direction = direction.turnRight();
-          } else {
-            guardPosition = new Position(nextX, nextY);
-//            if (!isValidPosition(guardPosition.x, guardPosition.y)) {
-//              break;
-//            }
-            visited.add(guardPosition);
-          }
+      private void markVisited(int cell) {
+        if (!visited[cell]) {
+          visited[cell] = true;
+          visitedCount++;
         }
-//        if (steps >= maxSteps) {
-//          System.out.println("Warning: Simulation stopped after " + steps + " steps");
-//        }
-        return visited.size();
       }
 
     public void printPath() {
@@ -304,9 +301,11 @@ public class Day6 {
       }
 
       // Mark visited positions
-      for (Position pos : visited) {
-        if (isValidPosition(pos.x, pos.y) && pathGrid[pos.y][pos.x] != '#' && pathGrid[pos.y][pos.x] != '^') {
-          pathGrid[pos.y][pos.x] = 'X';
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          if (visited[y * width + x] && pathGrid[y][x] != '#' && pathGrid[y][x] != '^') {
+            pathGrid[y][x] = 'X';
+          }
         }
       }
 
@@ -317,6 +316,84 @@ public class Day6 {
     }
   }
 
+  /**
+   * For every cell and each of the four directions, the cell the guard stops on when walking straight from there:
+   * the one just before the next obstacle, or the last cell before the edge of the map. Leaving the map is encoded
+   * as the bitwise complement of that last cell. Directions are indexed by {@link Direction#ordinal()}.
+   */
+  public static final class JumpTable {
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int width;
+    private final int height;
+    private final int[] jumps;
+
+    public JumpTable(char[][] grid) {
+      height = grid.length;
+      width = height > 0 ? grid[0].length : 0;
+      jumps = new int[width * height * 4];
+      for (Direction direction : DIRECTIONS) {
+        int dir = direction.ordinal();
+        // visit cells so that the neighbour in this direction is always filled in first
+        for (int i = 0; i < height; i++) {
+          int y = direction.y > 0 ? height - 1 - i : i;
+          for (int j = 0; j < width; j++) {
+            int x = direction.x > 0 ? width - 1 - j : j;
+            int cell = cellOf(x, y);
+            int nextX = x + direction.x;
+            int nextY = y + direction.y;
+            if (nextX < 0 || nextX >= width || nextY < 0 || nextY >= height) {
+              jumps[cell * 4 + dir] = ~cell;
+            } else if (grid[nextY][nextX] == '#') {
+              jumps[cell * 4 + dir] = cell;
+            } else {
+              jumps[cell * 4 + dir] = jumps[cellOf(nextX, nextY) * 4 + dir];
+            }
+          }
+        }
+      }
+    }
+
+    public int cellOf(int x, int y) {
+      return y * width + x;
+    }
+
+    public int next(int cell, int dir) {
+      return jumps[cell * 4 + dir];
+    }
+
+    public int step(int dir) {
+      Direction direction = DIRECTIONS[dir];
+      return direction.y * width + direction.x;
+    }
+
+    public static boolean exits(int target) {
+      return target < 0;
+    }
+
+    public static int stopCell(int target) {
+      return target < 0 ? ~target : target;
+    }
+
+    /**
+     * Whether {@code cell} lies on the segment walked from {@code from} (exclusive) to {@code to} (inclusive).
+     */
+    public boolean isOnSegment(int cell, int from, int to, int dir) {
+      Direction direction = DIRECTIONS[dir];
+      int x = cell % width;
+      int y = cell / width;
+      int fromX = from % width;
+      int fromY = from / width;
+      int toX = to % width;
+      int toY = to / width;
+      if (direction.x == 0) {
+        return x == fromX && (y - fromY) * direction.y > 0 && (toY - y) * direction.y >= 0;
+      }
+      return y == fromY && (x - fromX) * direction.x > 0 && (toX - x) * direction.x >= 0;
+    }
+  }
+
   public enum Direction {
     UP(0, -1),
     DOWN(1, 0),
@@ -361,34 +438,14 @@ public class Day6 {
   }
 
   public static class GuardLoopDetector {
-    private static class State {
-      Position pos;
-      Direction dir;
-
-      public State(Position pos, Direction dir) {
-        this.pos = pos;
-        this.dir = dir;
-      }
-
-      @Override
-      public boolean equals(Object o) {
-        if (!(o instanceof State state)) {
-          return false;
-        }
-        return Objects.equals(pos, state.pos) && dir == state.dir;
-      }
-
-      @Override
-      public int hashCode() {
-        return Objects.hash(pos, dir);
-      }
-    }
-
     private final char[][] originalGrid;
     private final int height;
     private final int width;
     private Position startPos;
     private Direction startDir;
+    private final JumpTable jumps;
+    private final int[] seenTurns;
+    private int generation;
 
     public GuardLoopDetector(List<String> gridLines) {
       height = gridLines.size();
@@ -404,69 +461,70 @@ public class Day6 {
           }
         }
       }
+      jumps = new JumpTable(originalGrid);
+      seenTurns = new int[width * height * 4];
     }
 
-    private boolean isValidPosition(int x, int y) {
-      return x >= 0 && x < width && y >= 0 && y < height;
-    }
-
-    private boolean simulateWithObstacle(Position obstacle) {
-      char[][] grid = new char[height][width];
-      for (int y = 0; y < height; y++) {
-        grid[y] = originalGrid[y].clone();
-      }
-
-      // Add the test obstacle
-      grid[obstacle.y][obstacle.x] = '#';
-
-      Position guardPos = startPos;
-      Direction direction = startDir;
-      Set<State> visited = new HashSet<>();
+    /**
+     * Replays the patrol with one extra obstacle by jumping from turn to turn. The extra obstacle is not written into
+     * the grid; each segment is only cut short when the obstacle lies on it. Only the states at turns are recorded, so
+     * a loop shows up as a turn that repeats. The replay starts at {@code cell} heading in {@code dir}.
+     */
+    private boolean simulateWithObstacle(int obstacleCell, int cell, int dir) {
+      generation++;
 
       while (true) {
-        // Record current state
-        State currentState = new State(guardPos, direction);
-        if (!visited.add(currentState)) {
-          return true; // Found a loop
+        int target = jumps.next(cell, dir);
+        int end = JumpTable.stopCell(target);
+        boolean exits = JumpTable.exits(target);
+        if (jumps.isOnSegment(obstacleCell, cell, end, dir)) {
+          end = obstacleCell - jumps.step(dir);
+          exits = false;
         }
-
-        // Calculate next position
-        int nextX = guardPos.x + direction.x;
-        int nextY = guardPos.y + direction.y;
-
-        // Check if we're leaving the grid
-        if (!isValidPosition(nextX, nextY)) {
+        if (exits) {
           return false;
         }
-
-        // Check for obstacle
-        if (grid[nextY][nextX] == '#') {
-          direction = direction.turnRight();
-        } else {
-          guardPos = new Position(nextX, nextY);
+        int state = end * 4 + dir;
+        if (seenTurns[state] == generation) {
+          return true;
         }
+        seenTurns[state] = generation;
+        cell = end;
+        dir = (dir + 1) % JumpTable.DIRECTIONS.length;
       }
     }
 
+    /**
+     * An obstacle can only change the patrol if the guard would walk into it, so only the cells of the original path
+     * are tried. The patrol is identical up to the first time the guard reaches the candidate cell, so each trial
+     * resumes from the guard's state one step before that instead of replaying from the start.
+     */
     public Set<Position> findLoopPositions() {
       Set<Position> loopPositions = new HashSet<>();
+      boolean[] tried = new boolean[width * height];
+      int cell = jumps.cellOf(startPos.x, startPos.y);
+      int dir = startDir.ordinal();
+      tried[cell] = true;
 
-      // Try adding an obstacle at each empty position
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          // Skip positions that already have obstacles or the guard's start
-          if (originalGrid[y][x] == '#' || (x == startPos.x && y == startPos.y)) {
-            continue;
-          }
-
-          Position testPos = new Position(x, y);
-          if (simulateWithObstacle(testPos)) {
-            loopPositions.add(testPos);
+      while (true) {
+        int target = jumps.next(cell, dir);
+        int end = JumpTable.stopCell(target);
+        int step = jumps.step(dir);
+        while (cell != end) {
+          int candidate = cell + step;
+          if (!tried[candidate]) {
+            tried[candidate] = true;
+            if (simulateWithObstacle(candidate, cell, dir)) {
+              loopPositions.add(new Position(candidate % width, candidate / width));
+            }
           }
+          cell = candidate;
         }
+        if (JumpTable.exits(target)) {
+          return loopPositions;
+        }
+        dir = (dir + 1) % JumpTable.DIRECTIONS.length;
       }
-
-      return loopPositions;
     }
 
     public void printWithLoopPositions(Set<Position> loopPositions) {